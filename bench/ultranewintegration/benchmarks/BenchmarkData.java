@@ -0,0 +1,86 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import ultranewintegration.CompositeCurve;
+import ultranewintegration.CosineWave;
+import ultranewintegration.DataSet;
+import ultranewintegration.DoublesDataSet;
+import ultranewintegration.FunctionDataCurve;
+import ultranewintegration.PolynomialCurve;
+import ultranewintegration.SinWave;
+
+/**
+ * Generates the grids and data sets shared by the integration benchmarks.
+ * @author Jacob M. Litman
+ */
+public final class BenchmarkData {
+
+    /**
+     * Kinds of DataSet the benchmarks integrate.
+     */
+    public enum Kind {
+        DOUBLES, SIN, POLYNOMIAL, COMPOSITE
+    }
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Builds a grid of nPoints points over [0, 1]. With half-width ends, the
+     * first and last bins are half the regular width, as in OSRW.
+     * @param nPoints Number of points
+     * @param halfWidthEnds Whether the end bins are half-width
+     * @return x coordinates
+     */
+    public static double[] grid(int nPoints, boolean halfWidthEnds) {
+        double[] x = new double[nPoints];
+        if (halfWidthEnds) {
+            double sep = 1.0 / (nPoints - 2);
+            for (int i = 1; i < nPoints - 1; i++) {
+                x[i] = (i - 0.5) * sep;
+            }
+            x[nPoints - 1] = 1.0;
+        } else {
+            double sep = 1.0 / (nPoints - 1);
+            for (int i = 0; i < nPoints; i++) {
+                x[i] = i * sep;
+            }
+        }
+        return x;
+    }
+
+    /**
+     * Builds a DataSet of the given kind over grid x.
+     * @param kind Kind of DataSet
+     * @param x Grid
+     * @param halfWidthEnds Whether the end bins are half-width
+     * @return New DataSet
+     */
+    public static DataSet dataSet(Kind kind, double[] x, boolean halfWidthEnds) {
+        switch (kind) {
+            case DOUBLES:
+                double[] fX = new double[x.length];
+                for (int i = 0; i < x.length; i++) {
+                    fX[i] = 10 * Math.sin(6 * x[i]) - 7 * Math.cos(5 * x[i]) + 11 * Math.sin(8 * x[i]);
+                }
+                return new DoublesDataSet(x, fX, halfWidthEnds);
+            case SIN:
+                return new SinWave(x, halfWidthEnds, 10, 6);
+            case POLYNOMIAL:
+                return new PolynomialCurve(x, halfWidthEnds, new double[]{2.0, 10.0, -18.0, 8.0, -5.0, 1.0});
+            case COMPOSITE:
+            default:
+                List<FunctionDataCurve> curves = new ArrayList<>();
+                curves.add(new SinWave(x, halfWidthEnds, 10, 6));
+                curves.add(new CosineWave(x, halfWidthEnds, -7, 5));
+                curves.add(new SinWave(x, halfWidthEnds, 11, 8));
+                return new CompositeCurve(curves, null);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ultranewintegration.FunctionDataCurve;
+import ultranewintegration.PolynomialCurve;
+import ultranewintegration.SinWave;
+
+/**
+ * JMH benchmarks for evaluating a sine wave over a grid: the bulk fX path,
+ * which steps along the grid by trigonometric recurrence, against calling
+ * Math.sin per point, and the SinWave constructor built on the bulk path;
+ * and a flattened CompositeCurve and a degree-25 PolynomialCurve, each
+ * evaluated in bulk and point by point.
+ * @author Jacob M. Litman
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CurveEvaluationBenchmark {
+
+    @Param({"201", "10001", "1000001"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean halfWidthEnds;
+
+    @Param({"6", "400"})
+    public double frequency;
+
+    private double[] x;
+    private double[] out;
+    private FunctionDataCurve curve;
+    private FunctionDataCurve composite;
+    private FunctionDataCurve polynomial;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        x = BenchmarkData.grid(size, halfWidthEnds);
+        out = new double[size];
+        curve = new SinWave(x, halfWidthEnds, 10, frequency);
+        composite = (FunctionDataCurve) BenchmarkData.dataSet(BenchmarkData.Kind.COMPOSITE, x, halfWidthEnds);
+        double[] coefficients = new double[26];
+        for (int k = 0; k < coefficients.length; k++) {
+            coefficients[k] = ((k % 2 == 0) ? 1.0 : -1.0) / (k + 1);
+        }
+        polynomial = new PolynomialCurve(x, halfWidthEnds, coefficients);
+    }
+
+    @Benchmark
+    public double[] bulk() {
+        curve.fX(x, out);
+        return out;
+    }
+
+    @Benchmark
+    public double[] perPoint() {
+        for (int i = 0; i < size; i++) {
+            out[i] = 10 * Math.sin(frequency * x[i]);
+        }
+        return out;
+    }
+
+    @Benchmark
+    public double[] compositeBulk() {
+        composite.fX(x, out);
+        return out;
+    }
+
+    @Benchmark
+    public double[] compositePerPoint() {
+        for (int i = 0; i < size; i++) {
+            out[i] = composite.fX(x[i]);
+        }
+        return out;
+    }
+
+    @Benchmark
+    public double[] polynomialBulk() {
+        polynomial.fX(x, out);
+        return out;
+    }
+
+    @Benchmark
+    public double[] polynomialPerPoint() {
+        for (int i = 0; i < size; i++) {
+            out[i] = polynomial.fX(x[i]);
+        }
+        return out;
+    }
+
+    @Benchmark
+    public FunctionDataCurve construct() {
+        return new SinWave(x, halfWidthEnds, 10, frequency);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ultranewintegration.DataSet;
+import ultranewintegration.MultiRuleIntegral;
+import ultranewintegration.ParallelIntegration;
+import ultranewintegration.UltraNewIntegration;
+import ultranewintegration.UltraNewIntegration.IntegrationSide;
+import ultranewintegration.UltraNewIntegration.IntegrationType;
+
+/**
+ * JMH benchmarks for the DataSet integrators in UltraNewIntegration, across
+ * data set kinds, sizes, sides and half-width ends. Besides the primary
+ * per-call score, the "points" secondary result counts integrated points, so
+ * in average-time mode it reads as time per point. Run with -prof gc for the
+ * allocation rate.
+ * @author Jacob M. Litman
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntegrationBenchmark {
+
+    @Param({"201", "10001", "1000001", "100000001"})
+    public int size;
+
+    @Param({"DOUBLES", "SIN", "POLYNOMIAL", "COMPOSITE"})
+    public BenchmarkData.Kind kind;
+
+    @Param({"LEFT", "RIGHT"})
+    public IntegrationSide side;
+
+    @Param({"false", "true"})
+    public boolean halfWidthEnds;
+
+    private DataSet data;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        data = BenchmarkData.dataSet(kind, BenchmarkData.grid(size, halfWidthEnds), halfWidthEnds);
+    }
+
+    /**
+     * Counts points integrated, normalized like the primary result.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class PointCounter {
+        public long points;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            points = 0;
+        }
+    }
+
+    @Benchmark
+    public double rectangular(PointCounter counter) {
+        counter.points += size;
+        return UltraNewIntegration.rectangular(data, side);
+    }
+
+    @Benchmark
+    public double trapezoidal(PointCounter counter) {
+        counter.points += size;
+        return UltraNewIntegration.trapezoidal(data, side);
+    }
+
+    @Benchmark
+    public double simpsons(PointCounter counter) {
+        counter.points += size;
+        return UltraNewIntegration.simpsons(data, side);
+    }
+
+    @Benchmark
+    public double boole(PointCounter counter) {
+        counter.points += size;
+        return UltraNewIntegration.boole(data, side);
+    }
+
+    @Benchmark
+    public double simpsonsWeighted(PointCounter counter) {
+        counter.points += size;
+        return UltraNewIntegration.integrateWeighted(data, IntegrationType.SIMPSONS, side);
+    }
+
+    @Benchmark
+    public MultiRuleIntegral allRules(PointCounter counter) {
+        counter.points += size;
+        return new MultiRuleIntegral(data);
+    }
+
+    @Benchmark
+    public double simpsonsParallel(PointCounter counter) {
+        counter.points += size;
+        return ParallelIntegration.integrate(data, IntegrationType.SIMPSONS, side);
+    }
+}
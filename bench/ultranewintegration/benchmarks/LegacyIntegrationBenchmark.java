@@ -0,0 +1,96 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ultranewintegration.UltraNewIntegration;
+import ultranewintegration.UltraNewIntegration.IntegrationSide;
+import ultranewintegration.UltraNewIntegration.IntegrationType;
+
+/**
+ * JMH benchmarks for the legacy double[] integrators. These are tied to the
+ * static 201-point grid in UltraNewIntegration, so they only run at that size;
+ * scores are normalized per point.
+ * @author Jacob M. Litman
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LegacyIntegrationBenchmark {
+
+    private static final int SIZE = 201;
+    private static final double WIDTH = 0.005;
+
+    @Param({"LEFT", "RIGHT"})
+    public IntegrationSide side;
+
+    private double[] data;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        double[] x = BenchmarkData.grid(SIZE, false);
+        data = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            data[i] = 10 * Math.sin(6 * x[i]) - 7 * Math.cos(5 * x[i]) + 11 * Math.sin(8 * x[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double rectangularMethod() {
+        return side == IntegrationSide.LEFT ? UltraNewIntegration.rectangularMethodLeft(data, WIDTH)
+                : UltraNewIntegration.rectangularMethodRight(data, WIDTH);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double trapInput() {
+        return side == IntegrationSide.LEFT ? UltraNewIntegration.trapInputLeft(data, WIDTH)
+                : UltraNewIntegration.trapInputRight(data, WIDTH);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double simpsons() {
+        return side == IntegrationSide.LEFT ? UltraNewIntegration.simpsonsLeft(data, WIDTH)
+                : UltraNewIntegration.simpsonsRight(data, WIDTH);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double boole() {
+        return side == IntegrationSide.LEFT ? UltraNewIntegration.booleLeft(data, WIDTH)
+                : UltraNewIntegration.booleRight(data, WIDTH);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double halfBinCompositeSimpsons() {
+        return UltraNewIntegration.HalfBinComposite(data, IntegrationType.SIMPSONS, side);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double halfBinCompositeBoole() {
+        return UltraNewIntegration.HalfBinComposite(data, IntegrationType.BOOLE, side);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SumKernel on the jdk.incubator.vector API, using the preferred species of
+ * the running CPU. Lane k of an accumulator only ever holds points whose index
+ * is k modulo the lane count, so as long as the period divides the lane count
+ * the residue sums fall out of the lanes directly. Otherwise (e.g. Boole's
+ * period 4 on 2-lane hardware) it falls back to the scalar kernel. The lane
+ * count and reduceLanes order vary by CPU, so results may differ in the last
+ * bits between machines; ParallelIntegration, which promises bit-identical
+ * results, sums with the scalar kernel instead.
+ *
+ * Compiled separately, with --add-modules jdk.incubator.vector; PointSums
+ * loads it reflectively and uses the scalar kernel if it cannot.
+ * @author Jacob M. Litman
+ */
+final class VectorSumKernel implements SumKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    @Override
+    public void residueSums(double[] buffer, int len, int period, double[] sums) {
+        if (LANES < 2 || LANES % period != 0) {
+            PointSums.SCALAR.residueSums(buffer, len, period, sums);
+            return;
+        }
+        DoubleVector acc0 = DoubleVector.zero(SPECIES);
+        DoubleVector acc1 = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (; i <= len - (2 * LANES); i += (2 * LANES)) {
+            acc0 = acc0.add(DoubleVector.fromArray(SPECIES, buffer, i));
+            acc1 = acc1.add(DoubleVector.fromArray(SPECIES, buffer, i + LANES));
+        }
+        for (; i <= len - LANES; i += LANES) {
+            acc0 = acc0.add(DoubleVector.fromArray(SPECIES, buffer, i));
+        }
+        DoubleVector acc = acc0.add(acc1);
+        if (period == 1) {
+            sums[0] += acc.reduceLanes(VectorOperators.ADD);
+        } else {
+            for (int k = 0; k < LANES; k++) {
+                sums[k % period] += acc.lane(k);
+            }
+        }
+        // i is a multiple of LANES, hence of period.
+        for (; i < len; i++) {
+            sums[i % period] += buffer[i];
+        }
+    }
+
+    @Override
+    public double dot(double[] weights, int offset, double[] buffer, int len) {
+        DoubleVector acc0 = DoubleVector.zero(SPECIES);
+        DoubleVector acc1 = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (; i <= len - (2 * LANES); i += (2 * LANES)) {
+            acc0 = DoubleVector.fromArray(SPECIES, weights, offset + i)
+                    .fma(DoubleVector.fromArray(SPECIES, buffer, i), acc0);
+            acc1 = DoubleVector.fromArray(SPECIES, weights, offset + i + LANES)
+                    .fma(DoubleVector.fromArray(SPECIES, buffer, i + LANES), acc1);
+        }
+        for (; i <= len - LANES; i += LANES) {
+            acc0 = DoubleVector.fromArray(SPECIES, weights, offset + i)
+                    .fma(DoubleVector.fromArray(SPECIES, buffer, i), acc0);
+        }
+        double sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) {
+            sum += weights[offset + i] * buffer[i];
+        }
+        return sum;
+    }
+}
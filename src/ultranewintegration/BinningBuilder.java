@@ -0,0 +1,225 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Bins raw (x, value) samples onto a uniform grid and returns the result as a
+ * DoublesDataSet, ready to integrate. Each sample goes to its nearest grid
+ * point (see the DataSet layout, including half-width ends); samples outside
+ * [lb, ub] are dropped.
+ *
+ * With a ForkJoinPool, fixed-size chunks of samples are binned into partial
+ * histograms in parallel and merged pairwise up a tree; the chunking depends
+ * only on the number of samples, so results do not depend on the pool size.
+ * The merged histogram is adopted by the DataSet, with no further copies and
+ * no x array.
+ * @author Jacob M. Litman
+ */
+public class BinningBuilder {
+    /**
+     * Samples per partial histogram.
+     */
+    static final int CHUNK = 1 << 16;
+
+    /**
+     * What each grid point holds.
+     */
+    public enum Mode {
+        /**
+         * Sum of the values binned to the point.
+         */
+        SUM,
+        /**
+         * Mean of the values binned to the point; 0 where there are none.
+         */
+        MEAN,
+        /**
+         * Number of samples binned to the point; values are ignored.
+         */
+        COUNT;
+    }
+
+    private final double lb;
+    private final double ub;
+    private final int nX;
+    private final boolean halfWidthEnd;
+    private final double sep;
+    private Mode mode = Mode.SUM;
+    private ForkJoinPool pool = null;
+
+    /**
+     * Creates a builder for a uniform grid.
+     * @param lb Lower bound
+     * @param ub Upper bound
+     * @param nPoints Number of points
+     * @param halfWidthEnds Whether the end bins are half-width
+     */
+    public BinningBuilder(double lb, double ub, int nPoints, boolean halfWidthEnds) {
+        if (nPoints < (halfWidthEnds ? 3 : 2) || !(ub > lb)) {
+            throw new IllegalArgumentException(String.format(" Invalid grid: %d points over [%g, %g]", nPoints, lb, ub));
+        }
+        this.lb = lb;
+        this.ub = ub;
+        this.nX = nPoints;
+        this.halfWidthEnd = halfWidthEnds;
+        sep = (ub - lb) / (halfWidthEnds ? nPoints - 2 : nPoints - 1);
+    }
+
+    /**
+     * Sets what each grid point holds; SUM by default.
+     * @param mode Mode
+     * @return This builder
+     */
+    public BinningBuilder mode(Mode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    /**
+     * Sets the pool to bin in; null (the default) bins sequentially.
+     * @param pool Pool
+     * @return This builder
+     */
+    public BinningBuilder pool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Bins every sample.
+     * @param x Sample positions
+     * @param values Sample values, of the same length; may be null for COUNT
+     * @return Binned DataSet
+     */
+    public DoublesDataSet build(double[] x, double[] values) {
+        return build(x, values, 0, x.length);
+    }
+
+    /**
+     * Bins samples from to from + count.
+     * @param x Sample positions
+     * @param values Sample values; may be null for COUNT
+     * @param from First sample
+     * @param count Number of samples
+     * @return Binned DataSet
+     */
+    public DoublesDataSet build(double[] x, double[] values, int from, int count) {
+        if (values == null && mode != Mode.COUNT) {
+            throw new IllegalArgumentException(String.format(" Values are required for %s binning", mode));
+        }
+        if (from < 0 || count < 0 || from + count > x.length || (values != null && from + count > values.length)) {
+            throw new IllegalArgumentException(String.format(" Samples [%d, %d) are out of bounds", from, from + count));
+        }
+        BinTask task = new BinTask(x, values, from, from + count, pool != null);
+        Partial partial = (pool == null) ? task.compute() : pool.invoke(task);
+
+        double[] points;
+        switch (mode) {
+            case COUNT:
+                points = new double[nX];
+                for (int i = 0; i < nX; i++) {
+                    points[i] = partial.counts[i];
+                }
+                break;
+            case MEAN:
+                points = partial.sums;
+                for (int i = 0; i < nX; i++) {
+                    points[i] = (partial.counts[i] > 0) ? points[i] / partial.counts[i] : 0.0;
+                }
+                break;
+            case SUM:
+            default:
+                points = partial.sums;
+                break;
+        }
+        return new DoublesDataSet(lb, ub, points, halfWidthEnd);
+    }
+
+    /**
+     * Partial histogram of a range of samples.
+     */
+    private static final class Partial {
+        private final double[] sums;
+        private final long[] counts;
+
+        Partial(int nPoints, boolean withSums) {
+            sums = withSums ? new double[nPoints] : null;
+            counts = new long[nPoints];
+        }
+
+        void merge(Partial other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            if (sums != null) {
+                for (int i = 0; i < sums.length; i++) {
+                    sums[i] += other.sums[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Bins samples [lo, hi), splitting at a chunk boundary near the midpoint.
+     * Forks only if parallel, so sequential binning called from a pool
+     * thread stays on that thread.
+     */
+    private final class BinTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+        private final double[] x;
+        private final double[] values;
+        private final int lo;
+        private final int hi;
+        private final boolean parallel;
+
+        BinTask(double[] x, double[] values, int lo, int hi, boolean parallel) {
+            this.x = x;
+            this.values = values;
+            this.lo = lo;
+            this.hi = hi;
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected Partial compute() {
+            int nChunks = (hi - lo + CHUNK - 1) / CHUNK;
+            if (nChunks <= 1) {
+                return bin();
+            }
+            int mid = lo + ((nChunks / 2) * CHUNK);
+            BinTask left = new BinTask(x, values, lo, mid, parallel);
+            BinTask right = new BinTask(x, values, mid, hi, parallel);
+            if (!parallel) {
+                Partial merged = left.compute();
+                merged.merge(right.compute());
+                return merged;
+            }
+            right.fork();
+            Partial merged = left.compute();
+            merged.merge(right.join());
+            return merged;
+        }
+
+        private Partial bin() {
+            Partial partial = new Partial(nX, mode != Mode.COUNT);
+            for (int k = lo; k < hi; k++) {
+                double xk = x[k];
+                if (!(xk >= lb && xk <= ub)) {
+                    continue;
+                }
+                int i = ConcurrentHistogram.nearestPoint(xk, lb, sep, nX, halfWidthEnd);
+                partial.counts[i]++;
+                if (partial.sums != null) {
+                    partial.sums[i] += values[k];
+                }
+            }
+            return partial;
+        }
+    }
+}
@@ -5,20 +5,69 @@
  */
 package ultranewintegration;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 /**
  * A CompositeCurve represents points along a sum of functions which also extend
  * FunctionDataCurve.
+ *
+ * When constructed, the components are flattened by type, with nested
+ * composites inlined: polynomials merge into one polynomial evaluated by
+ * Horner's rule, and sine and cosine terms pack into parallel amplitude and
+ * frequency arrays. fX and integralAt then run plain loops over those arrays
+ * instead of a virtual call per component. Only those exact classes are
+ * flattened; any other kind of curve, including a subclass that may override
+ * fX or integralAt, is still called through FunctionDataCurve.
  * @author Jacob M. Litman
  */
 public class CompositeCurve extends FunctionDataCurve {
     private final FunctionDataCurve[] curves;
     private final double[] coeffs;
     private final int nCurves;
+    /**
+     * Merged polynomial, poly[k] multiplying x^k, and its antiderivative.
+     */
+    private final double[] poly;
+    private final double[] polyIntegral;
+    private final double[] sinAmp;
+    private final double[] sinFreq;
+    private final double[] cosAmp;
+    private final double[] cosFreq;
+    private final FunctionDataCurve[] others;
+    private final double[] otherCoeffs;
+    
+    /**
+     * Points per chunk of bulk evaluation and summation.
+     */
+    private static final int CHUNK = 2048;
+    /**
+     * Phase drift across the grid, in ulps of the largest phase direct
+     * summation evaluates, within which a component's frequency counts as
+     * lined up with an FFT bin.
+     */
+    private static final double PHASE_ULPS = 4.0;
     
     public CompositeCurve(List<FunctionDataCurve> componentCurves, List<Double> coefficients) {
+        this(componentCurves, coefficients, false);
+    }
+    
+    /**
+     * Sums component curves, optionally by FFT. In spectral mode, SinWave and
+     * CosineWave components whose frequencies fall on a bin of an FFT over
+     * the grid (j * binWidth * size / 2 pi an integer, for the smallest power
+     * of 2 size covering the uniform points, closely enough that the phase
+     * stays within a few ulp across the grid) are grouped into their bins and
+     * summed by one inverse FFT, in O(n log n) however many there are. Other
+     * components, and half-width end points, are summed directly. If any
+     * component is lazily sampled, the composite is too, evaluating its
+     * flattened terms tile by tile, and spectral is ignored.
+     * @param componentCurves Curves to sum, over the same grid
+     * @param coefficients Coefficient of each curve, or null for all 1
+     * @param spectral Whether to sum eligible components by FFT
+     */
+    public CompositeCurve(List<FunctionDataCurve> componentCurves, List<Double> coefficients, boolean spectral) {
         assert !componentCurves.isEmpty();
         nCurves = componentCurves.size();
         this.curves = new FunctionDataCurve[nCurves];
@@ -54,35 +103,285 @@ public class CompositeCurve extends FunctionDataCurve {
             throw new IllegalArgumentException(" Not all curves passed to CompositeCurve had the same x[] points!");
         }
         
+        Flattener flat = new Flattener();
+        for (int c = 0; c < nCurves; c++) {
+            flat.add(curves[c], coeffs[c]);
+        }
+        poly = flat.poly;
+        polyIntegral = Polynomials.antiderivative(poly);
+        sinAmp = toArray(flat.sinAmp);
+        sinFreq = toArray(flat.sinFreq);
+        cosAmp = toArray(flat.cosAmp);
+        cosFreq = toArray(flat.cosFreq);
+        others = flat.others.toArray(new FunctionDataCurve[0]);
+        otherCoeffs = toArray(flat.otherCoeffs);
+        
         int nPoints = curve0.numPoints();
+        if (Arrays.stream(curves).anyMatch(FunctionDataCurve::isLazy)) {
+            sampleLazily(lb, ub, nPoints, halfWidthEnd);
+            return;
+        }
         points = new double[nPoints];
-        for (int i = 0; i < nPoints; i++) {
-            points[i] = 0.0;
-            for (int j = 0; j < nCurves; j++) {
-                points[i] += (coeffs[j] * curves[j].getPoint(i));
+        boolean[] summed = spectral ? addHarmonics(sep) : new boolean[nCurves];
+        double[] buffer = new double[Math.min(nPoints, CHUNK)];
+        for (int j = 0; j < nCurves; j++) {
+            if (summed[j]) {
+                continue;
+            }
+            for (int from = 0; from < nPoints; from += CHUNK) {
+                int len = Math.min(CHUNK, nPoints - from);
+                curves[j].copyRange(from, buffer, 0, len);
+                for (int i = 0; i < len; i++) {
+                    points[from + i] += (coeffs[j] * buffer[i]);
+                }
             }
         }
     }
 
+    /**
+     * Adds the SinWave and CosineWave components lined up with the grid into
+     * points by one inverse real FFT. Each such component repeats exactly
+     * every size / 2^t points for some t, so the FFT only needs the longest
+     * such period, tiled across the grid.
+     * @param sep Bin width
+     * @return Which components were added
+     */
+    private boolean[] addHarmonics(double sep) {
+        boolean[] summed = new boolean[nCurves];
+        int nPoints = points.length;
+        int first = halfWidthEnd ? 1 : 0;
+        int nUniform = nPoints - (2 * first);
+        double x0 = halfWidthEnd ? lb + (0.5 * sep) : lb;
+        int size = Integer.highestOneBit(nUniform);
+        if (size < nUniform) {
+            size <<= 1;
+        }
+        int log2Size = Integer.numberOfTrailingZeros(size);
+        
+        long[] bins = new long[nCurves];
+        int period = 1;
+        boolean any = false;
+        for (int c = 0; c < nCurves; c++) {
+            double j = frequency(curves[c]);
+            if (Double.isNaN(j)) {
+                continue;
+            }
+            double k = (j * sep * size) / (2.0 * Math.PI);
+            double bin = Math.rint(k);
+            // Summing in bin rather than at k drifts 2 pi |k - bin| / size radians a point, so by the end of the
+            // grid must stay within a few ulp of the phases direct summation would round; otherwise sum directly.
+            double drift = (2.0 * Math.PI * Math.abs(k - bin) * nUniform) / size;
+            double maxPhase = Math.abs(j) * Math.max(Math.abs(lb), Math.abs(ub));
+            if (!(drift <= PHASE_ULPS * Math.ulp(maxPhase)) || Math.abs(bin) > Long.MAX_VALUE / 2) {
+                continue;
+            }
+            bins[c] = (long) bin;
+            int shift = (bins[c] == 0) ? log2Size : Math.min(log2Size, Long.numberOfTrailingZeros(bins[c]));
+            period = Math.max(period, size >> shift);
+            summed[c] = true;
+            any = true;
+        }
+        if (!any) {
+            return summed;
+        }
+        period = Math.max(period, 2);
+        int shift = log2Size - Integer.numberOfTrailingZeros(period);
+        
+        // a cos(phase + 2 pi k m / period) is the real part of a exp(i phase) in bin k, and a sin is the real
+        // part of -i a exp(i phase); half of each goes in bin k and its conjugate in bin -k, so the sum is real.
+        double[] re = new double[period];
+        double[] im = new double[period];
+        for (int c = 0; c < nCurves; c++) {
+            if (!summed[c]) {
+                continue;
+            }
+            double halfAmplitude = 0.5 * coeffs[c] * amplitude(curves[c]);
+            double phase = frequency(curves[c]) * x0;
+            double cr;
+            double ci;
+            if (curves[c].getClass() == CosineWave.class) {
+                cr = halfAmplitude * Math.cos(phase);
+                ci = halfAmplitude * Math.sin(phase);
+            } else {
+                cr = halfAmplitude * Math.sin(phase);
+                ci = -halfAmplitude * Math.cos(phase);
+            }
+            long bin = bins[c] >> shift;
+            int k = (int) Math.floorMod(bin, (long) period);
+            int conjugate = (int) Math.floorMod(-bin, (long) period);
+            re[k] += cr;
+            im[k] += ci;
+            re[conjugate] += cr;
+            im[conjugate] -= ci;
+        }
+        
+        double[] sum = FFT.inverseReal(re, im);
+        for (int m = 0; m < nUniform; m++) {
+            points[first + m] += sum[m & (period - 1)];
+        }
+        if (halfWidthEnd) {
+            for (int c = 0; c < nCurves; c++) {
+                if (summed[c]) {
+                    points[0] += (coeffs[c] * curves[c].getPoint(0));
+                    points[nPoints - 1] += (coeffs[c] * curves[c].getPoint(nPoints - 1));
+                }
+            }
+        }
+        return summed;
+    }
+    
+    /**
+     * Angular frequency of a SinWave or CosineWave, or NaN for other curves,
+     * including their subclasses.
+     */
+    private static double frequency(FunctionDataCurve curve) {
+        if (curve.getClass() == SinWave.class) {
+            return ((SinWave) curve).frequency();
+        } else if (curve.getClass() == CosineWave.class) {
+            return ((CosineWave) curve).frequency();
+        }
+        return Double.NaN;
+    }
+    
+    /**
+     * Amplitude of a SinWave or CosineWave.
+     */
+    private static double amplitude(FunctionDataCurve curve) {
+        return (curve.getClass() == SinWave.class) ? ((SinWave) curve).amplitude() : ((CosineWave) curve).amplitude();
+    }
+    
     @Override
     public double integralAt(double x) {
-        double val = 0.0;
-        for (int i = 0; i < nCurves; i++) {
-            val += (curves[i].integralAt(x) * coeffs[i]);
+        double val = Polynomials.horner(polyIntegral, polyIntegral.length - 1, x);
+        for (int i = 0; i < sinAmp.length; i++) {
+            val -= (sinAmp[i] / sinFreq[i]) * Math.cos(sinFreq[i] * x);
+        }
+        for (int i = 0; i < cosAmp.length; i++) {
+            val += (cosAmp[i] / cosFreq[i]) * Math.sin(cosFreq[i] * x);
+        }
+        for (int i = 0; i < others.length; i++) {
+            val += (others[i].integralAt(x) * otherCoeffs[i]);
         }
         return val;
     }
     
     @Override
     public double fX(double x) {
-        double val = 0.0;
-        for (int i = 0; i < nCurves; i++) {
-            val += (curves[i].fX(x) * coeffs[i]);
+        double val = Polynomials.horner(poly, poly.length - 1, x);
+        for (int i = 0; i < sinAmp.length; i++) {
+            val += sinAmp[i] * Math.sin(sinFreq[i] * x);
+        }
+        for (int i = 0; i < cosAmp.length; i++) {
+            val += cosAmp[i] * Math.cos(cosFreq[i] * x);
+        }
+        for (int i = 0; i < others.length; i++) {
+            val += (others[i].fX(x) * otherCoeffs[i]);
         }
         return val;
     }
     
+    /**
+     * Evaluates the sum over xs a chunk at a time: the merged polynomial by
+     * Horner's rule across the chunk, then each sine and cosine term by
+     * recurrence along equally spaced runs.
+     * @param xs x values
+     * @param out f(xs[i]); length at least xs.length
+     */
+    @Override
+    public void fX(double[] xs, double[] out) {
+        int n = xs.length;
+        checkOutputLength(out, n);
+        double[] term = new double[Math.min(n, CHUNK)];
+        for (int from = 0; from < n; from += CHUNK) {
+            int to = Math.min(n, from + CHUNK);
+            Polynomials.horner(poly, poly.length - 1, xs, from, out, from, to - from);
+            for (int t = 0; t < sinAmp.length; t++) {
+                TrigRecurrence.sin(xs, from, to, term, sinAmp[t], sinFreq[t]);
+                for (int i = from; i < to; i++) {
+                    out[i] += term[i - from];
+                }
+            }
+            for (int t = 0; t < cosAmp.length; t++) {
+                TrigRecurrence.cos(xs, from, to, term, cosAmp[t], cosFreq[t]);
+                for (int i = from; i < to; i++) {
+                    out[i] += term[i - from];
+                }
+            }
+            if (others.length > 0) {
+                double[] chunk = Arrays.copyOfRange(xs, from, to);
+                for (int t = 0; t < others.length; t++) {
+                    others[t].fX(chunk, term);
+                    for (int i = from; i < to; i++) {
+                        out[i] += otherCoeffs[t] * term[i - from];
+                    }
+                }
+            }
+        }
+    }
+    
+    private static double[] toArray(List<Double> values) {
+        return values.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+    
     public List<FunctionDataCurve> getSubCurves() {
         return Arrays.asList(curves);
     }
+    
+    /**
+     * Collects flattened, scaled terms of the components.
+     */
+    private static final class Flattener {
+        private double[] poly = new double[0];
+        private final List<Double> sinAmp = new ArrayList<>();
+        private final List<Double> sinFreq = new ArrayList<>();
+        private final List<Double> cosAmp = new ArrayList<>();
+        private final List<Double> cosFreq = new ArrayList<>();
+        private final List<FunctionDataCurve> others = new ArrayList<>();
+        private final List<Double> otherCoeffs = new ArrayList<>();
+        
+        /**
+         * Adds a curve's terms. Classes are matched exactly, as a subclass
+         * may override fX or integralAt; such curves go to others.
+         */
+        void add(FunctionDataCurve curve, double scale) {
+            Class<?> type = curve.getClass();
+            if (type == PolynomialCurve.class) {
+                addPolynomial(((PolynomialCurve) curve).coefficients(), scale);
+            } else if (type == SinWave.class) {
+                sinAmp.add(scale * ((SinWave) curve).amplitude());
+                sinFreq.add(((SinWave) curve).frequency());
+            } else if (type == CosineWave.class) {
+                cosAmp.add(scale * ((CosineWave) curve).amplitude());
+                cosFreq.add(((CosineWave) curve).frequency());
+            } else if (type == CompositeCurve.class) {
+                // Already flattened; inline its terms.
+                CompositeCurve nested = (CompositeCurve) curve;
+                addPolynomial(nested.poly, scale);
+                for (int i = 0; i < nested.sinAmp.length; i++) {
+                    sinAmp.add(scale * nested.sinAmp[i]);
+                    sinFreq.add(nested.sinFreq[i]);
+                }
+                for (int i = 0; i < nested.cosAmp.length; i++) {
+                    cosAmp.add(scale * nested.cosAmp[i]);
+                    cosFreq.add(nested.cosFreq[i]);
+                }
+                for (int i = 0; i < nested.others.length; i++) {
+                    others.add(nested.others[i]);
+                    otherCoeffs.add(scale * nested.otherCoeffs[i]);
+                }
+            } else {
+                others.add(curve);
+                otherCoeffs.add(scale);
+            }
+        }
+        
+        private void addPolynomial(double[] coefficients, double scale) {
+            if (coefficients.length > poly.length) {
+                poly = Arrays.copyOf(poly, coefficients.length);
+            }
+            for (int k = 0; k < coefficients.length; k++) {
+                poly[k] += scale * coefficients[k];
+            }
+        }
+    }
 }
@@ -0,0 +1,305 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A uniform-grid profile that many threads accumulate into concurrently, such
+ * as counts or energies binned over lambda by several walkers.
+ *
+ * Each thread adds into one of several stripes of bins (as DoubleAdder does
+ * for a single value), each padded to whole cache lines, so writers on
+ * different stripes never contend; a
+ * thread that loses a compare-and-set to another moves to a different stripe. Stripes
+ * come in two generations: writers add into the current one, and snapshot()
+ * switches generation, waits for writes already in progress on the old one to
+ * finish, and folds it into a running total. The snapshot therefore holds
+ * exactly the additions that completed before it, and is an immutable
+ * DoublesDataSet that any integrator can use while writers keep going.
+ *
+ * The DataSet methods of the histogram itself read live sums. Each read holds
+ * the snapshot lock, so it never sees an addition twice while a snapshot is
+ * folding it in, but it is not synchronized with writers, and separate reads
+ * may see different sets of additions; integrate a snapshot() for a
+ * consistent result.
+ * @author Jacob M. Litman
+ */
+public class ConcurrentHistogram implements DataSet {
+    /**
+     * Longs between active-writer counters, so each sits on its own cache
+     * line; stripe rows of cells are padded to a multiple of it likewise.
+     */
+    private static final int PAD = 16;
+    /**
+     * Seeds for each thread's probe.
+     */
+    private static final AtomicInteger PROBE_SEED = new AtomicInteger();
+    /**
+     * Each thread's stripe hash, moved on contention as Striped64 moves its
+     * probe. Shared by every histogram, which mask it to their stripe count.
+     */
+    private static final ThreadLocal<int[]> PROBE = ThreadLocal.withInitial(
+            () -> new int[]{PROBE_SEED.addAndGet(0x9E3779B9) | 1});
+
+    private final double lb;
+    private final double ub;
+    private final int nX;
+    private final double sep;
+    private final boolean halfWidthEnd;
+    private final int nStripes;
+    /**
+     * Longs per stripe row: nX rounded up to a multiple of PAD.
+     */
+    private final int stride;
+    /**
+     * Double bits of cells[generation][stripe * stride + bin].
+     */
+    private final AtomicLongArray[] cells = new AtomicLongArray[2];
+    /**
+     * Writers in progress, active[generation][stripe * PAD].
+     */
+    private final AtomicLongArray[] active = new AtomicLongArray[2];
+    private volatile int generation = 0;
+    /**
+     * Every addition folded in by snapshots so far; guarded by this.
+     */
+    private final double[] base;
+
+    /**
+     * Creates a histogram with two stripes per available processor.
+     * @param lb Lower bound
+     * @param ub Upper bound
+     * @param nPoints Number of points
+     * @param halfWidthEnds Whether the end bins are half-width
+     */
+    public ConcurrentHistogram(double lb, double ub, int nPoints, boolean halfWidthEnds) {
+        this(lb, ub, nPoints, halfWidthEnds, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a histogram.
+     * @param lb Lower bound
+     * @param ub Upper bound
+     * @param nPoints Number of points
+     * @param halfWidthEnds Whether the end bins are half-width
+     * @param stripes Number of stripes; rounded up to a power of 2
+     */
+    public ConcurrentHistogram(double lb, double ub, int nPoints, boolean halfWidthEnds, int stripes) {
+        if (nPoints < (halfWidthEnds ? 3 : 2) || !(ub > lb) || stripes < 1) {
+            throw new IllegalArgumentException(String.format(" Invalid histogram: %d points over [%g, %g], %d stripes", nPoints, lb, ub, stripes));
+        }
+        this.lb = lb;
+        this.ub = ub;
+        this.nX = nPoints;
+        this.halfWidthEnd = halfWidthEnds;
+        sep = (ub - lb) / (halfWidthEnds ? nPoints - 2 : nPoints - 1);
+        int n = 1;
+        while (n < stripes) {
+            n <<= 1;
+        }
+        nStripes = n;
+        stride = ((nX + PAD - 1) / PAD) * PAD;
+        for (int g = 0; g < 2; g++) {
+            cells[g] = new AtomicLongArray(Math.multiplyExact(nStripes, stride));
+            active[g] = new AtomicLongArray(nStripes * PAD);
+        }
+        base = new double[nX];
+    }
+
+    /**
+     * Adds value to the point nearest x. As in BinningBuilder, samples
+     * outside [lowerBound(), upperBound()], or NaN, are dropped.
+     * @param x x
+     * @param value Value to add
+     * @return Whether x was within the bounds and the value added
+     */
+    public boolean addSample(double x, double value) {
+        if (!(x >= lb && x <= ub)) {
+            return false;
+        }
+        add(nearestPoint(x, lb, sep, nX, halfWidthEnd), value);
+        return true;
+    }
+
+    /**
+     * Adds value to the point at index.
+     * @param index Index
+     * @param value Value to add
+     */
+    public void add(int index, double value) {
+        if (index < 0 || index >= nX) {
+            throw new IllegalArgumentException(String.format(" Index %d outside [0, %d)", index, nX));
+        }
+        int[] probe = PROBE.get();
+        int stripe = probe[0] & (nStripes - 1);
+        while (true) {
+            int g = generation;
+            AtomicLongArray writers = active[g];
+            writers.incrementAndGet(stripe * PAD);
+            if (generation == g) {
+                boolean contended = addTo(cells[g], (stripe * stride) + index, value);
+                writers.decrementAndGet(stripe * PAD);
+                if (contended) {
+                    // Xorshift to another stripe for later additions.
+                    int h = probe[0];
+                    h ^= h << 13;
+                    h ^= h >>> 17;
+                    h ^= h << 5;
+                    probe[0] = h;
+                }
+                return;
+            }
+            // A snapshot switched generation meanwhile; retry on the new one.
+            writers.decrementAndGet(stripe * PAD);
+        }
+    }
+
+    /**
+     * An immutable copy of every addition completed before this call.
+     * Writers are not blocked; concurrent snapshots run one at a time.
+     * @return Snapshot
+     */
+    public synchronized DoublesDataSet snapshot() {
+        int old = generation;
+        generation = 1 - old;
+        AtomicLongArray writers = active[old];
+        for (int s = 0; s < nStripes; s++) {
+            while (writers.get(s * PAD) != 0) {
+                Thread.onSpinWait();
+            }
+        }
+        AtomicLongArray folded = cells[old];
+        for (int s = 0; s < nStripes; s++) {
+            int offset = s * stride;
+            for (int i = 0; i < nX; i++) {
+                long bits = folded.get(offset + i);
+                if (bits != 0L) {
+                    base[i] += Double.longBitsToDouble(bits);
+                    folded.set(offset + i, 0L);
+                }
+            }
+        }
+        return new DoublesDataSet(lb, ub, base.clone(), halfWidthEnd);
+    }
+
+    /**
+     * Adds value to array[i] by compare-and-set.
+     * @return Whether a compare-and-set failed, i.e. another thread was
+     * writing the same cell
+     */
+    private static boolean addTo(AtomicLongArray array, int i, double value) {
+        boolean contended = false;
+        while (true) {
+            long prev = array.get(i);
+            long next = Double.doubleToRawLongBits(Double.longBitsToDouble(prev) + value);
+            if (array.compareAndSet(i, prev, next)) {
+                return contended;
+            }
+            contended = true;
+        }
+    }
+
+    /**
+     * Index of the grid point nearest x, on a uniform grid with the DataSet
+     * layout (half-width ends put points at lb, lb + sep/2, lb + 3 sep/2, ...,
+     * ub). Values outside the grid map to the nearest end.
+     * @param x x
+     * @param lb Lower bound
+     * @param sep Bin width
+     * @param nPoints Number of points
+     * @param halfWidthEnds Whether the end bins are half-width
+     * @return Index
+     */
+    static int nearestPoint(double x, double lb, double sep, int nPoints, boolean halfWidthEnds) {
+        double t = (x - lb) / sep;
+        if (!halfWidthEnds) {
+            return (int) Math.max(0, Math.min(nPoints - 1, Math.round(t)));
+        }
+        if (t < 0.25) {
+            return 0;
+        }
+        if (t > (nPoints - 2) - 0.25) {
+            return nPoints - 1;
+        }
+        return Math.max(1, Math.min(nPoints - 2, (int) t + 1));
+    }
+
+    @Override
+    public double lowerBound() {
+        return lb;
+    }
+
+    @Override
+    public double upperBound() {
+        return ub;
+    }
+
+    @Override
+    public int numPoints() {
+        return nX;
+    }
+
+    @Override
+    public double binWidth() {
+        return sep;
+    }
+
+    /**
+     * Live sum at index. Synchronized with snapshot(), which would otherwise
+     * be seen between adding a cell into the folded total and clearing it;
+     * not synchronized with writers.
+     * @param index Index
+     * @return Current sum
+     */
+    @Override
+    public synchronized double getPoint(int index) {
+        return liveSum(index);
+    }
+
+    /**
+     * Live sums of a range, under one hold of the snapshot lock rather than
+     * one per point.
+     * @param index First point to copy
+     * @param dest Destination array
+     * @param destPos Starting position in dest
+     * @param length Number of points to copy
+     */
+    @Override
+    public synchronized void copyRange(int index, double[] dest, int destPos, int length) {
+        for (int i = 0; i < length; i++) {
+            dest[destPos + i] = liveSum(index + i);
+        }
+    }
+
+    /**
+     * Sum of every addition to a point so far; holds the lock.
+     */
+    private double liveSum(int index) {
+        double sum = base[index];
+        for (int g = 0; g < 2; g++) {
+            for (int s = 0; s < nStripes; s++) {
+                sum += Double.longBitsToDouble(cells[g].get((s * stride) + index));
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Points of a fresh snapshot.
+     * @return Points
+     */
+    @Override
+    public double[] getAllPoints() {
+        return snapshot().getAllPoints();
+    }
+
+    @Override
+    public boolean halfWidthEnds() {
+        return halfWidthEnd;
+    }
+}
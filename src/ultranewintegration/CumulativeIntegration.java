@@ -0,0 +1,262 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+import ultranewintegration.UltraNewIntegration.IntegrationSide;
+import ultranewintegration.UltraNewIntegration.IntegrationType;
+
+/**
+ * Cumulative (running) integrals: the integral from lowerBound() to every
+ * point of a DataSet, computed in one linear pass.
+ *
+ * The rule layout is that of UltraNewIntegration, so the last value equals
+ * UltraNewIntegration.integrate up to rounding. Points inside a Simpson's
+ * pair or Boole's quad (or inside the leftover bins) are integrated over the
+ * same interpolating polynomial the rule integrates, so every value is of the
+ * rule's order, not just those at rule-aligned indices.
+ * @author Jacob M. Litman
+ */
+public final class CumulativeIntegration {
+    /**
+     * PARTIAL[m - 1][j - 1][i]: weight of point i in the integral from the
+     * first point to point j of the polynomial through m + 1 equally spaced
+     * points, in units of the spacing. PARTIAL[m - 1][m - 1] are the closed
+     * Newton-Cotes rules: trapezoidal, Simpson's, Simpson's 3/8 and Boole's.
+     */
+    static final double[][][] PARTIAL = {
+        {
+            {0.5, 0.5}
+        },
+        {
+            {5.0 / 12.0, 2.0 / 3.0, -1.0 / 12.0},
+            {1.0 / 3.0, 4.0 / 3.0, 1.0 / 3.0}
+        },
+        {
+            {3.0 / 8.0, 19.0 / 24.0, -5.0 / 24.0, 1.0 / 24.0},
+            {1.0 / 3.0, 4.0 / 3.0, 1.0 / 3.0, 0.0},
+            {3.0 / 8.0, 9.0 / 8.0, 9.0 / 8.0, 3.0 / 8.0}
+        },
+        {
+            {251.0 / 720.0, 323.0 / 360.0, -11.0 / 30.0, 53.0 / 360.0, -19.0 / 720.0},
+            {29.0 / 90.0, 62.0 / 45.0, 4.0 / 15.0, 2.0 / 45.0, -1.0 / 90.0},
+            {27.0 / 80.0, 51.0 / 40.0, 9.0 / 10.0, 21.0 / 40.0, -3.0 / 80.0},
+            {14.0 / 45.0, 64.0 / 45.0, 8.0 / 15.0, 64.0 / 45.0, 14.0 / 45.0}
+        }
+    };
+    private static final double[][] RECTANGULAR_LEFT = {{1.0, 0.0}};
+    private static final double[][] RECTANGULAR_RIGHT = {{0.0, 1.0}};
+
+    private CumulativeIntegration() {
+    }
+
+    /**
+     * Fills out[k] with the integral from point 0 to point k.
+     * @param data DataSet to integrate
+     * @param type Integration rule
+     * @param side Side to align the rule to
+     * @param out Destination, of length at least data.numPoints()
+     */
+    public static void cumulativeIntegral(DataSet data, IntegrationType type, IntegrationSide side, double[] out) {
+        cumulativeIntegral(data, type, side, out, null);
+    }
+
+    /**
+     * Fills out[k] with the integral from point 0 to point k, as a parallel
+     * prefix scan: blocks of whole rule windows are integrated independently,
+     * then shifted by the running block totals. The block layout depends only
+     * on the number of points, so results do not depend on the pool size.
+     * @param data DataSet to integrate; must support concurrent reads
+     * @param type Integration rule
+     * @param side Side to align the rule to
+     * @param out Destination, of length at least data.numPoints()
+     * @param pool Pool to run in
+     */
+    public static void cumulativeIntegral(DataSet data, IntegrationType type, IntegrationSide side, double[] out, ForkJoinPool pool) {
+        int nPoints = data.numPoints();
+        if (out.length < nPoints) {
+            throw new IllegalArgumentException(String.format(" Output length %d is less than %d points", out.length, nPoints));
+        }
+        double width = data.binWidth();
+        int lb = 0;
+        int ub = nPoints - 1;
+        out[0] = 0.0;
+        double base = 0.0;
+        if (data.halfWidthEnds()) {
+            double halfWidth = 0.5 * width;
+            if (type == IntegrationType.RECTANGULAR) {
+                base = halfWidth * (side == IntegrationSide.LEFT ? data.getPoint(0) : data.getPoint(1));
+            } else {
+                base = 0.5 * halfWidth * (data.getPoint(0) + data.getPoint(1));
+            }
+            out[1] = base;
+            lb++;
+            ub--;
+        }
+
+        double[][] weights;
+        int period;
+        switch (type) {
+            case RECTANGULAR:
+                weights = (side == IntegrationSide.LEFT) ? RECTANGULAR_LEFT : RECTANGULAR_RIGHT;
+                period = 1;
+                break;
+            case SIMPSONS:
+                weights = PARTIAL[1];
+                period = 2;
+                break;
+            case BOOLE:
+                weights = PARTIAL[3];
+                period = 4;
+                break;
+            case TRAPEZOIDAL:
+            default:
+                weights = PARTIAL[0];
+                period = 1;
+                break;
+        }
+        int remainder = (ub - lb) % period;
+        if (side == IntegrationSide.RIGHT && remainder > 0) {
+            base = scanWindows(data, PARTIAL[remainder - 1], lb, lb + remainder, base, out);
+            lb += remainder;
+        } else {
+            ub -= remainder;
+        }
+        if (pool == null) {
+            base = scanWindows(data, weights, lb, ub, base, out);
+        } else {
+            base = parallelScan(data, weights, lb, ub, base, out, pool);
+        }
+        if (side == IntegrationSide.LEFT && remainder > 0) {
+            base = scanWindows(data, PARTIAL[remainder - 1], ub, ub + remainder, base, out);
+            ub += remainder;
+        }
+
+        if (data.halfWidthEnds()) {
+            double halfWidth = 0.5 * width;
+            if (type == IntegrationType.RECTANGULAR) {
+                base += halfWidth * (side == IntegrationSide.LEFT ? data.getPoint(ub) : data.getPoint(ub + 1));
+            } else {
+                base += 0.5 * halfWidth * (data.getPoint(ub) + data.getPoint(ub + 1));
+            }
+            out[ub + 1] = base;
+        }
+    }
+
+    /**
+     * Scans windows of weights.length bins from point from to point to, which
+     * must be a whole number of windows apart.
+     * @return out[to]
+     */
+    private static double scanWindows(DataSet data, double[][] weights, int from, int to, double base, double[] out) {
+        int bins = weights.length;
+        assert (to - from) % bins == 0;
+        if (to <= from) {
+            return base;
+        }
+        double width = data.binWidth();
+        double compensation = 0.0;
+        double[] buffer = new double[Math.min(PointSums.CHUNK, to - from) + 1];
+        int bufferStart = from;
+        int bufferEnd = from - 1;
+        for (int start = from; start < to; start += bins) {
+            if (start + bins > bufferEnd) {
+                int len = Math.min(buffer.length, to - start + 1);
+                data.copyRange(start, buffer, 0, len);
+                bufferStart = start;
+                bufferEnd = start + len - 1;
+            }
+            int offset = start - bufferStart;
+            for (int j = 1; j < bins; j++) {
+                out[start + j] = base + (width * dot(weights[j - 1], buffer, offset));
+            }
+            // Compensated running sum across windows.
+            double y = (width * dot(weights[bins - 1], buffer, offset)) - compensation;
+            double t = base + y;
+            compensation = (t - base) - y;
+            base = t;
+            out[start + bins] = base;
+        }
+        return base;
+    }
+
+    private static double dot(double[] weights, double[] buffer, int offset) {
+        double sum = 0.0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i] * buffer[offset + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Parallel form of scanWindows, over blocks of ParallelIntegration.LEAF_SIZE
+     * bins (a multiple of every window size).
+     */
+    private static double parallelScan(DataSet data, double[][] weights, int from, int to, double base, double[] out, ForkJoinPool pool) {
+        int span = to - from;
+        int block = ParallelIntegration.LEAF_SIZE;
+        int nBlocks = (span + block - 1) / block;
+        if (nBlocks <= 1) {
+            return scanWindows(data, weights, from, to, base, out);
+        }
+        double[] totals = new double[nBlocks];
+        forEachBlock(pool, nBlocks, (int i) -> {
+            int lo = from + (i * block);
+            int hi = Math.min(to, lo + block);
+            totals[i] = scanWindows(data, weights, lo, hi, 0.0, out);
+        });
+        double[] offsets = new double[nBlocks];
+        double compensation = 0.0;
+        for (int i = 0; i < nBlocks; i++) {
+            offsets[i] = base;
+            double y = totals[i] - compensation;
+            double t = base + y;
+            compensation = (t - base) - y;
+            base = t;
+        }
+        forEachBlock(pool, nBlocks, (int i) -> {
+            int lo = from + (i * block);
+            int hi = Math.min(to, lo + block);
+            double offset = offsets[i];
+            for (int k = lo + 1; k <= hi; k++) {
+                out[k] += offset;
+            }
+        });
+        return base;
+    }
+
+    private static void forEachBlock(ForkJoinPool pool, int nBlocks, IntConsumer action) {
+        pool.invoke(new BlockAction(action, 0, nBlocks));
+    }
+
+    /**
+     * Applies an action to blocks [lo, hi), splitting at the midpoint.
+     */
+    private static final class BlockAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final IntConsumer action;
+        private final int lo;
+        private final int hi;
+
+        BlockAction(IntConsumer action, int lo, int hi) {
+            this.action = action;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo == 1) {
+                action.accept(lo);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new BlockAction(action, lo, mid), new BlockAction(action, mid, hi));
+        }
+    }
+}
@@ -42,6 +42,19 @@ public interface DataSet {
      * @return 
      */
     public abstract double[] getAllPoints();
+    /**
+     * Copies a range of points into dest without copying the rest of the set;
+     * integrators read through this in fixed-size chunks.
+     * @param index First point to copy
+     * @param dest Destination array
+     * @param destPos Starting position in dest
+     * @param length Number of points to copy
+     */
+    public default void copyRange(int index, double[] dest, int destPos, int length) {
+        for (int i = 0; i < length; i++) {
+            dest[destPos + i] = getPoint(index + i);
+        }
+    }
     /**
      * Does this data set have half-width start/end bins. Intended for OSRW,
      * where the first and last bins are half the regular width.
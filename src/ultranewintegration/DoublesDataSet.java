@@ -47,6 +47,26 @@ public class DoublesDataSet implements DataSet {
         sep = halfWidthEnd ? (sepDist / ((double) nX-2)) : (sepDist / ((double) nX-1));
         assertXIntegrity(x);
     }
+    
+    /**
+     * Adopts fX on a uniform grid from lb to ub, without copying it or
+     * building an x array; the caller must not modify fX afterwards.
+     * @param lb Lower bound
+     * @param ub Upper bound
+     * @param fX Points, adopted
+     * @param halvedEnds Whether the end bins are half-width
+     */
+    DoublesDataSet(double lb, double ub, double[] fX, boolean halvedEnds) {
+        nX = fX.length;
+        assert ub > lb;
+        assert nX >= (halvedEnds ? 3 : 2);
+        this.x = null;
+        this.fX = fX;
+        this.lb = lb;
+        this.ub = ub;
+        halfWidthEnd = halvedEnds;
+        sep = halfWidthEnd ? ((ub - lb) / ((double) nX-2)) : ((ub - lb) / ((double) nX-1));
+    }
 
     @Override
     public double lowerBound() {
@@ -60,7 +80,7 @@ public class DoublesDataSet implements DataSet {
 
     @Override
     public int numPoints() {
-        return x.length;
+        return nX;
     }
 
     @Override
@@ -80,6 +100,11 @@ public class DoublesDataSet implements DataSet {
         return pts;
     }
     
+    @Override
+    public void copyRange(int index, double[] dest, int destPos, int length) {
+        System.arraycopy(fX, index, dest, destPos, length);
+    }
+    
     @Override
     public boolean halfWidthEnds() {
         return halfWidthEnd;
@@ -0,0 +1,147 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+/**
+ * In-place iterative radix-2 fast Fourier transforms of complex data held as
+ * separate real and imaginary arrays, whose length must be a power of 2, and
+ * a real-output inverse for Hermitian spectra at half the cost.
+ * Twiddle factors are computed directly (over one quadrant, the rest by
+ * symmetry) rather than by recurrence, so rounding error grows only as
+ * log2(n).
+ * @author Jacob M. Litman
+ */
+public final class FFT {
+
+    private FFT() {
+    }
+
+    /**
+     * Forward transform, X[k] = sum over m of x[m] exp(-2 pi i k m / n).
+     * @param re Real parts, replaced by the transform's
+     * @param im Imaginary parts, replaced by the transform's
+     */
+    public static void forward(double[] re, double[] im) {
+        transform(re, im, -1.0);
+    }
+
+    /**
+     * Inverse transform without the 1/n factor, x[m] = sum over k of X[k]
+     * exp(2 pi i k m / n); inverse(forward(x)) is n x.
+     * @param re Real parts, replaced by the transform's
+     * @param im Imaginary parts, replaced by the transform's
+     */
+    public static void inverse(double[] re, double[] im) {
+        transform(re, im, 1.0);
+    }
+
+    /**
+     * Inverse transform without the 1/n factor, of a Hermitian spectrum
+     * (X[n - k] the conjugate of X[k]), whose transform is real. Runs as one
+     * complex transform of half the length, with even points in the real
+     * parts and odd points in the imaginary parts.
+     * @param re Real parts of the spectrum; unchanged
+     * @param im Imaginary parts of the spectrum; unchanged
+     * @return x[m] = sum over k of X[k] exp(2 pi i k m / n)
+     */
+    public static double[] inverseReal(double[] re, double[] im) {
+        int n = re.length;
+        if (im.length != n || Integer.bitCount(n) != 1) {
+            throw new IllegalArgumentException(String.format(" FFT lengths %d and %d must be an equal power of 2", n, im.length));
+        }
+        if (n == 1) {
+            return new double[]{re[0]};
+        }
+        int half = n / 2;
+        double[] cos = new double[half];
+        double[] sin = new double[half];
+        twiddles(n, cos, sin);
+        // Even points transform E[k] = X[k] + X[k + n/2], odd points O[k] = (X[k] - X[k + n/2]) w^k.
+        double[] zr = new double[half];
+        double[] zi = new double[half];
+        for (int k = 0; k < half; k++) {
+            double dr = re[k] - re[k + half];
+            double di = im[k] - im[k + half];
+            double or = (dr * cos[k]) - (di * sin[k]);
+            double oi = (dr * sin[k]) + (di * cos[k]);
+            zr[k] = (re[k] + re[k + half]) - oi;
+            zi[k] = (im[k] + im[k + half]) + or;
+        }
+        transform(zr, zi, 1.0);
+        double[] x = new double[n];
+        for (int m = 0; m < half; m++) {
+            x[2 * m] = zr[m];
+            x[(2 * m) + 1] = zi[m];
+        }
+        return x;
+    }
+
+    private static void transform(double[] re, double[] im, double sign) {
+        int n = re.length;
+        if (im.length != n || Integer.bitCount(n) > 1) {
+            throw new IllegalArgumentException(String.format(" FFT lengths %d and %d must be an equal power of 2", n, im.length));
+        }
+        if (n < 2) {
+            return;
+        }
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+
+        int half = n / 2;
+        double[] cos = new double[half];
+        double[] sin = new double[half];
+        twiddles(n, cos, sin);
+
+        for (int len = 2; len <= n; len <<= 1) {
+            int h = len / 2;
+            int stride = n / len;
+            for (int i = 0; i < n; i += len) {
+                for (int k = 0; k < h; k++) {
+                    double wr = cos[k * stride];
+                    double wi = sign * sin[k * stride];
+                    int a = i + k;
+                    int b = a + h;
+                    double tr = (wr * re[b]) - (wi * im[b]);
+                    double ti = (wr * im[b]) + (wi * re[b]);
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+
+    /**
+     * cos and sin of 2 pi m / n for m below n / 2.
+     */
+    private static void twiddles(int n, double[] cos, double[] sin) {
+        int half = n / 2;
+        int quarter = n / 4;
+        for (int m = 0; m <= quarter && m < half; m++) {
+            double angle = (2.0 * Math.PI * m) / n;
+            cos[m] = Math.cos(angle);
+            sin[m] = Math.sin(angle);
+        }
+        for (int m = quarter + 1; m < half; m++) {
+            cos[m] = -sin[m - quarter];
+            sin[m] = cos[m - quarter];
+        }
+    }
+}
@@ -8,6 +8,11 @@ package ultranewintegration;
 /**
  * A DataCurve represents a set of points along a 1-dimensional, integrable 
  * function.
+ *
+ * Points are normally evaluated into an array when the curve is built. A
+ * lazily sampled curve (see sampleLazily) instead evaluates them on demand,
+ * in tiles held by a small LRU cache, so a grid of 10^9 points costs only the
+ * tiles actually read.
  * @author Jacob
  */
 public abstract class FunctionDataCurve implements DataSet {
@@ -15,6 +20,10 @@ public abstract class FunctionDataCurve implements DataSet {
     protected double ub;
     protected double[] points;
     protected boolean halfWidthEnd;
+    /**
+     * Tiles of points when lazily sampled, in which case points is null.
+     */
+    private PointTiles tiles;
     
     @Override
     public double lowerBound() {
@@ -28,12 +37,12 @@ public abstract class FunctionDataCurve implements DataSet {
     
     @Override
     public int numPoints() {
-        return points.length;
+        return (tiles != null) ? tiles.numPoints() : points.length;
     }
     
     @Override
     public double binWidth() {
-        double divisor = halfWidthEnds() ? (double) (points.length - 2) : (double) (points.length - 1);
+        double divisor = halfWidthEnds() ? (double) (numPoints() - 2) : (double) (numPoints() - 1);
         return (ub - lb) / divisor;
     }
     
@@ -69,19 +78,83 @@ public abstract class FunctionDataCurve implements DataSet {
      */
     public abstract double fX(double x);
     
+    /**
+     * Evaluates the function at every xs[i], into out[i]. Subclasses with a
+     * faster bulk path (such as a recurrence over a uniform grid) override
+     * this; the default calls fX(x) per point.
+     * @param xs x values
+     * @param out f(xs[i]); length at least xs.length
+     */
+    public void fX(double[] xs, double[] out) {
+        checkOutputLength(out, xs.length);
+        for (int i = 0; i < xs.length; i++) {
+            out[i] = fX(xs[i]);
+        }
+    }
+    
+    /**
+     * Throws unless out can hold the n values of a bulk evaluation.
+     * @param out Output
+     * @param n Values to be written
+     */
+    static void checkOutputLength(double[] out, int n) {
+        if (out.length < n) {
+            throw new IllegalArgumentException(String.format(" Output length %d is less than %d", out.length, n));
+        }
+    }
+    
+    /**
+     * Puts this curve in lazy-sampling mode over nPoints points from lb to ub,
+     * laid out as assertXIntegrity expects. Called by subclass constructors in
+     * place of filling points, once fX is ready to evaluate.
+     * @param lb Lower bound
+     * @param ub Upper bound
+     * @param nPoints Number of points
+     * @param halfWidthEnds Whether the first and last bins are half-width
+     */
+    protected final void sampleLazily(double lb, double ub, int nPoints, boolean halfWidthEnds) {
+        tiles = new PointTiles(this, lb, ub, nPoints, halfWidthEnds);
+        this.lb = lb;
+        this.ub = ub;
+        this.halfWidthEnd = halfWidthEnds;
+        points = null;
+    }
+    
+    /**
+     * Whether points are evaluated on demand rather than held in an array.
+     * @return If lazily sampled
+     */
+    public boolean isLazy() {
+        return tiles != null;
+    }
+    
     @Override
     public double getPoint(int index) {
-        return points[index];
+        return (tiles != null) ? tiles.get(index) : points[index];
     }
     
+    /**
+     * Returns a copy of the points; a lazily sampled curve evaluates every
+     * point into the copy.
+     * @return Points
+     */
     @Override
     public double[] getAllPoints() {
-        int npoints = points.length;
+        int npoints = numPoints();
         double[] retArray = new double[npoints];
-        System.arraycopy(points, 0, retArray, 0, npoints);
+        copyRange(0, retArray, 0, npoints);
         return retArray;
     }
     
+    @Override
+    public void copyRange(int index, double[] dest, int destPos, int length) {
+        if (tiles != null) {
+            tiles.copyRange(index, dest, destPos, length);
+        } else {
+            System.arraycopy(points, index, dest, destPos, length);
+        }
+    }
+    
     /**
      * Used to check that the passed-in x array is composed of equally-spaced
      * points from lb to ub.
@@ -0,0 +1,298 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+import java.util.PriorityQueue;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Adaptive 7-point Gauss, 15-point Kronrod quadrature of a function evaluated
+ * on demand, such as FunctionDataCurve.fX, with no sampled grid. Subintervals
+ * are kept in a priority queue by estimated error above their roundoff floor;
+ * the worst is bisected until the error estimate meets the tolerance or the
+ * evaluation budget runs out. Error estimates follow QUADPACK's QK15,
+ * including its floor of 50 ulp(1) times the integral of |f|. Since no
+ * bisection can do better than that floor, the tolerance is met once the
+ * error above each subinterval's floor, summed, is within it; a tolerance
+ * below the floor (when the area is much smaller than the integral of |f|)
+ * is thus still reachable.
+ * @author Jacob M. Litman
+ */
+public final class GaussKronrodIntegration {
+    /**
+     * Default limit on function evaluations.
+     */
+    public static final int DEFAULT_MAX_EVALUATIONS = 15000;
+    /**
+     * Kronrod nodes on [-1, 1], positive half, descending; odd entries are
+     * also the Gauss nodes.
+     */
+    private static final double[] KRONROD_NODES = {
+        0.991455371120812639206854697526329,
+        0.949107912342758524526189684047851,
+        0.864864423359769072789712788640926,
+        0.741531185599394439863864773280788,
+        0.586087235467691130294144845693013,
+        0.405845151377397166906606412076961,
+        0.207784955007898467600689403773245,
+        0.0
+    };
+    private static final double[] KRONROD_WEIGHTS = {
+        0.022935322010529224963732008058970,
+        0.063092092629978553290700663189204,
+        0.104790010322250183839876322541518,
+        0.140653259715525918745189590510238,
+        0.169004726639267902826583426598550,
+        0.190350578064785409913256402421014,
+        0.204432940075298892414161999234649,
+        0.209482141084727828012999174891714
+    };
+    /**
+     * Gauss weights of KRONROD_NODES[1], [3], [5] and [7].
+     */
+    private static final double[] GAUSS_WEIGHTS = {
+        0.129484966168869693270611432679082,
+        0.279705391489276667901467771423780,
+        0.381830050505118944950369775488975,
+        0.417959183673469387755102040816327
+    };
+    private static final int EVALUATIONS_PER_RULE = 15;
+
+    private GaussKronrodIntegration() {
+    }
+
+    /**
+     * Integrates a curve's function over its range to a relative tolerance.
+     * @param curve Curve to integrate; only fX is called
+     * @param relativeTolerance Relative error tolerance
+     * @return Result
+     */
+    public static Result integrate(FunctionDataCurve curve, double relativeTolerance) {
+        return integrate(curve::fX, curve.lowerBound(), curve.upperBound(), 0.0, relativeTolerance, DEFAULT_MAX_EVALUATIONS);
+    }
+
+    /**
+     * Integrates a function from a to b, stopping once the error estimate is
+     * within max(absoluteTolerance, relativeTolerance * |area|).
+     * @param f Function
+     * @param a Lower limit
+     * @param b Upper limit
+     * @param absoluteTolerance Absolute error tolerance
+     * @param relativeTolerance Relative error tolerance
+     * @param maxEvaluations Evaluation budget; at least 15
+     * @return Result
+     */
+    public static Result integrate(DoubleUnaryOperator f, double a, double b,
+            double absoluteTolerance, double relativeTolerance, int maxEvaluations) {
+        if (maxEvaluations < EVALUATIONS_PER_RULE) {
+            throw new IllegalArgumentException(String.format(" Budget of %d evaluations is below %d", maxEvaluations, EVALUATIONS_PER_RULE));
+        }
+        if (absoluteTolerance < 0 || relativeTolerance < 0) {
+            throw new IllegalArgumentException(String.format(" Negative tolerance %g, %g", absoluteTolerance, relativeTolerance));
+        }
+        PriorityQueue<Interval> queue = new PriorityQueue<>();
+        Interval whole = rule(f, a, b);
+        queue.add(whole);
+        int evaluations = EVALUATIONS_PER_RULE;
+        double area = whole.area;
+        double error = whole.error;
+        RunningSum excess = new RunningSum();
+        excess.add(whole.excess());
+
+        while (excess.value() > tolerance(absoluteTolerance, relativeTolerance, area)
+                && evaluations + (2 * EVALUATIONS_PER_RULE) <= maxEvaluations) {
+            Interval worst = queue.peek();
+            double mid = 0.5 * (worst.a + worst.b);
+            if (mid <= worst.a || mid >= worst.b) {
+                // Too narrow to split.
+                break;
+            }
+            queue.poll();
+            Interval left = rule(f, worst.a, mid);
+            Interval right = rule(f, mid, worst.b);
+            evaluations += 2 * EVALUATIONS_PER_RULE;
+            queue.add(left);
+            queue.add(right);
+            area += (left.area + right.area) - worst.area;
+            error += (left.error + right.error) - worst.error;
+            excess.add(left.excess());
+            excess.add(right.excess());
+            excess.add(-worst.excess());
+        }
+
+        // Re-sum, rather than trust the running updates.
+        area = 0.0;
+        error = 0.0;
+        excess = new RunningSum();
+        for (Interval interval : queue) {
+            area += interval.area;
+            error += interval.error;
+            excess.add(interval.excess());
+        }
+        boolean converged = excess.value() <= tolerance(absoluteTolerance, relativeTolerance, area);
+        return new Result(area, error, evaluations, queue.size(), converged);
+    }
+
+    /**
+     * Requested tolerance at the current area.
+     */
+    private static double tolerance(double absoluteTolerance, double relativeTolerance, double area) {
+        return Math.max(absoluteTolerance, relativeTolerance * Math.abs(area));
+    }
+
+    /**
+     * Applies the G7K15 pair to [a, b].
+     */
+    private static Interval rule(DoubleUnaryOperator f, double a, double b) {
+        double center = 0.5 * (a + b);
+        double halfLength = 0.5 * (b - a);
+        double fCenter = f.applyAsDouble(center);
+        double kronrod = fCenter * KRONROD_WEIGHTS[7];
+        double gauss = fCenter * GAUSS_WEIGHTS[3];
+        double absolute = Math.abs(kronrod);
+        double[] lower = new double[7];
+        double[] upper = new double[7];
+        for (int i = 0; i < 7; i++) {
+            double dx = halfLength * KRONROD_NODES[i];
+            lower[i] = f.applyAsDouble(center - dx);
+            upper[i] = f.applyAsDouble(center + dx);
+            double sum = lower[i] + upper[i];
+            kronrod += KRONROD_WEIGHTS[i] * sum;
+            absolute += KRONROD_WEIGHTS[i] * (Math.abs(lower[i]) + Math.abs(upper[i]));
+            if ((i & 1) == 1) {
+                gauss += GAUSS_WEIGHTS[i / 2] * sum;
+            }
+        }
+        // Integral of |f - mean| over the interval, for QUADPACK's error scaling.
+        double mean = 0.5 * kronrod;
+        double deviation = KRONROD_WEIGHTS[7] * Math.abs(fCenter - mean);
+        for (int i = 0; i < 7; i++) {
+            deviation += KRONROD_WEIGHTS[i] * (Math.abs(lower[i] - mean) + Math.abs(upper[i] - mean));
+        }
+
+        double scale = Math.abs(halfLength);
+        double area = kronrod * halfLength;
+        double error = Math.abs((kronrod - gauss) * halfLength);
+        deviation *= scale;
+        absolute *= scale;
+        if (deviation != 0.0 && error != 0.0) {
+            error = deviation * Math.min(1.0, Math.pow(200.0 * error / deviation, 1.5));
+        }
+        double roundoff = 0.0;
+        if (absolute > Double.MIN_NORMAL / (50.0 * Math.ulp(1.0))) {
+            roundoff = 50.0 * Math.ulp(1.0) * absolute;
+            error = Math.max(roundoff, error);
+        }
+        return new Interval(a, b, area, error, roundoff);
+    }
+
+    /**
+     * Neumaier-compensated sum. The first intervals' excess can be many
+     * orders of magnitude above the tolerance, so removing it again by plain
+     * addition would leave rounding error larger than the remaining terms.
+     */
+    private static final class RunningSum {
+        private double sum;
+        private double compensation;
+
+        void add(double value) {
+            double t = sum + value;
+            if (Math.abs(sum) >= Math.abs(value)) {
+                compensation += (sum - t) + value;
+            } else {
+                compensation += (value - t) + sum;
+            }
+            sum = t;
+        }
+
+        double value() {
+            return sum + compensation;
+        }
+    }
+
+    /**
+     * A subinterval, ordered by most error above its roundoff floor first.
+     */
+    private static final class Interval implements Comparable<Interval> {
+        private final double a;
+        private final double b;
+        private final double area;
+        private final double error;
+        private final double roundoff;
+
+        Interval(double a, double b, double area, double error, double roundoff) {
+            this.a = a;
+            this.b = b;
+            this.area = area;
+            this.error = error;
+            this.roundoff = roundoff;
+        }
+
+        /**
+         * Error above the roundoff floor, which bisection may still reduce.
+         */
+        double excess() {
+            return error - roundoff;
+        }
+
+        @Override
+        public int compareTo(Interval other) {
+            return Double.compare(other.excess(), excess());
+        }
+    }
+
+    /**
+     * Result of an adaptive Gauss-Kronrod integration.
+     */
+    public static final class Result {
+        private final double area;
+        private final double errorEstimate;
+        private final int evaluations;
+        private final int intervals;
+        private final boolean converged;
+
+        private Result(double area, double errorEstimate, int evaluations, int intervals, boolean converged) {
+            this.area = area;
+            this.errorEstimate = errorEstimate;
+            this.evaluations = evaluations;
+            this.intervals = intervals;
+            this.converged = converged;
+        }
+
+        public double getArea() {
+            return area;
+        }
+
+        public double getErrorEstimate() {
+            return errorEstimate;
+        }
+
+        /**
+         * Number of function evaluations used.
+         * @return Evaluations
+         */
+        public int getEvaluations() {
+            return evaluations;
+        }
+
+        /**
+         * Number of subintervals in the final partition.
+         * @return Intervals
+         */
+        public int getIntervals() {
+            return intervals;
+        }
+
+        /**
+         * Whether the tolerance (or the roundoff floor) was met within the
+         * evaluation budget.
+         * @return Converged
+         */
+        public boolean isConverged() {
+            return converged;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+import java.util.Arrays;
+
+/**
+ * Values f(r, c) on a uniform two-dimensional grid, such as OSRW's joint
+ * histogram over lambda (rows) and dU/dlambda (columns), stored in one flat
+ * row-major array. Each axis has its own bounds and may have half-width end
+ * bins, with the same layout as a one-dimensional DataSet.
+ *
+ * Rows and columns are available as DataSet views, without copying, and the
+ * grid integrates along either axis or both with GridIntegration. Values may
+ * be updated in place; the grid is not synchronized.
+ * @author Jacob M. Litman
+ */
+public class GridDataSet2D {
+    private final double rowLb;
+    private final double rowUb;
+    private final int nRows;
+    private final boolean rowHalfWidth;
+    private final double colLb;
+    private final double colUb;
+    private final int nCols;
+    private final boolean colHalfWidth;
+    private final double[] values;
+
+    /**
+     * Creates a grid of zeros.
+     * @param rowLb Lower bound along rows
+     * @param rowUb Upper bound along rows
+     * @param nRows Number of rows
+     * @param rowHalfWidth Whether the first and last rows are half-width bins
+     * @param colLb Lower bound along columns
+     * @param colUb Upper bound along columns
+     * @param nCols Number of columns
+     * @param colHalfWidth Whether the first and last columns are half-width bins
+     */
+    public GridDataSet2D(double rowLb, double rowUb, int nRows, boolean rowHalfWidth,
+            double colLb, double colUb, int nCols, boolean colHalfWidth) {
+        this(rowLb, rowUb, nRows, rowHalfWidth, colLb, colUb, nCols, colHalfWidth, new double[Math.multiplyExact(nRows, nCols)]);
+    }
+
+    /**
+     * Creates a grid from a copy of row-major values.
+     * @param rowLb Lower bound along rows
+     * @param rowUb Upper bound along rows
+     * @param nRows Number of rows
+     * @param rowHalfWidth Whether the first and last rows are half-width bins
+     * @param colLb Lower bound along columns
+     * @param colUb Upper bound along columns
+     * @param nCols Number of columns
+     * @param colHalfWidth Whether the first and last columns are half-width bins
+     * @param values f(r, c) at values[r * nCols + c]
+     */
+    public GridDataSet2D(double rowLb, double rowUb, int nRows, boolean rowHalfWidth,
+            double colLb, double colUb, int nCols, boolean colHalfWidth, double[] values) {
+        if (nRows < (rowHalfWidth ? 3 : 2) || nCols < (colHalfWidth ? 3 : 2) || !(rowUb > rowLb) || !(colUb > colLb)) {
+            throw new IllegalArgumentException(String.format(" Invalid grid: %d rows over [%g, %g], %d columns over [%g, %g]",
+                    nRows, rowLb, rowUb, nCols, colLb, colUb));
+        }
+        if (values.length != Math.multiplyExact(nRows, nCols)) {
+            throw new IllegalArgumentException(String.format(" %d values for %d by %d grid", values.length, nRows, nCols));
+        }
+        this.rowLb = rowLb;
+        this.rowUb = rowUb;
+        this.nRows = nRows;
+        this.rowHalfWidth = rowHalfWidth;
+        this.colLb = colLb;
+        this.colUb = colUb;
+        this.nCols = nCols;
+        this.colHalfWidth = colHalfWidth;
+        this.values = Arrays.copyOf(values, values.length);
+    }
+
+    public int numRows() {
+        return nRows;
+    }
+
+    public int numColumns() {
+        return nCols;
+    }
+
+    public double rowLowerBound() {
+        return rowLb;
+    }
+
+    public double rowUpperBound() {
+        return rowUb;
+    }
+
+    public double columnLowerBound() {
+        return colLb;
+    }
+
+    public double columnUpperBound() {
+        return colUb;
+    }
+
+    /**
+     * Separation between rows.
+     * @return Row bin width
+     */
+    public double rowBinWidth() {
+        return (rowUb - rowLb) / (rowHalfWidth ? nRows - 2 : nRows - 1);
+    }
+
+    /**
+     * Separation between columns.
+     * @return Column bin width
+     */
+    public double columnBinWidth() {
+        return (colUb - colLb) / (colHalfWidth ? nCols - 2 : nCols - 1);
+    }
+
+    public boolean rowHalfWidthEnds() {
+        return rowHalfWidth;
+    }
+
+    public boolean columnHalfWidthEnds() {
+        return colHalfWidth;
+    }
+
+    public double getValue(int row, int column) {
+        return values[(row * nCols) + column];
+    }
+
+    public void setValue(int row, int column, double value) {
+        values[(row * nCols) + column] = value;
+    }
+
+    public void addValue(int row, int column, double value) {
+        values[(row * nCols) + column] += value;
+    }
+
+    /**
+     * Returns a copy of the row-major values.
+     * @return Values
+     */
+    public double[] getAllValues() {
+        return Arrays.copyOf(values, values.length);
+    }
+
+    /**
+     * Backing row-major array, for the integrators.
+     */
+    double[] values() {
+        return values;
+    }
+
+    /**
+     * A live view of one row, as a DataSet over the column axis.
+     * @param row Row
+     * @return Row view
+     */
+    public DataSet row(int row) {
+        if (row < 0 || row >= nRows) {
+            throw new IllegalArgumentException(String.format(" Row %d outside [0, %d)", row, nRows));
+        }
+        return new RowView(row * nCols);
+    }
+
+    /**
+     * A live view of one column, as a DataSet over the row axis.
+     * @param column Column
+     * @return Column view
+     */
+    public DataSet column(int column) {
+        if (column < 0 || column >= nCols) {
+            throw new IllegalArgumentException(String.format(" Column %d outside [0, %d)", column, nCols));
+        }
+        return new ColumnView(column);
+    }
+
+    private final class RowView implements DataSet {
+        private final int offset;
+
+        RowView(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public double lowerBound() {
+            return colLb;
+        }
+
+        @Override
+        public double upperBound() {
+            return colUb;
+        }
+
+        @Override
+        public int numPoints() {
+            return nCols;
+        }
+
+        @Override
+        public double binWidth() {
+            return columnBinWidth();
+        }
+
+        @Override
+        public double getPoint(int index) {
+            return values[offset + index];
+        }
+
+        @Override
+        public double[] getAllPoints() {
+            return Arrays.copyOfRange(values, offset, offset + nCols);
+        }
+
+        @Override
+        public void copyRange(int index, double[] dest, int destPos, int length) {
+            System.arraycopy(values, offset + index, dest, destPos, length);
+        }
+
+        @Override
+        public boolean halfWidthEnds() {
+            return colHalfWidth;
+        }
+    }
+
+    private final class ColumnView implements DataSet {
+        private final int column;
+
+        ColumnView(int column) {
+            this.column = column;
+        }
+
+        @Override
+        public double lowerBound() {
+            return rowLb;
+        }
+
+        @Override
+        public double upperBound() {
+            return rowUb;
+        }
+
+        @Override
+        public int numPoints() {
+            return nRows;
+        }
+
+        @Override
+        public double binWidth() {
+            return rowBinWidth();
+        }
+
+        @Override
+        public double getPoint(int index) {
+            return values[(index * nCols) + column];
+        }
+
+        @Override
+        public double[] getAllPoints() {
+            double[] points = new double[nRows];
+            copyRange(0, points, 0, nRows);
+            return points;
+        }
+
+        @Override
+        public boolean halfWidthEnds() {
+            return rowHalfWidth;
+        }
+    }
+}
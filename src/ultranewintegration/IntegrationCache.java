@@ -0,0 +1,217 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import ultranewintegration.UltraNewIntegration.IntegrationSide;
+import ultranewintegration.UltraNewIntegration.IntegrationType;
+
+/**
+ * An opt-in cache of integration results, for pipelines that integrate the
+ * same data set by the same rule from many places. Results are keyed by data
+ * set identity, rule, side and range, so repeated queries cost a hash lookup
+ * rather than a pass over the points.
+ *
+ * Data sets are held weakly: an entry goes away once its data set is
+ * collected. A MutableDataSet's results are tagged with its version and
+ * recomputed after it changes. A ConcurrentHistogram changes under its
+ * writers with no version to tag, so it is rejected; cache one of its
+ * snapshot()s instead. Any other data set must not change while cached
+ * (DoublesDataSet and FunctionDataCurve do not). The cache holds at
+ * most maxEntries results, evicting the least recently used, and is safe for
+ * concurrent use.
+ * @author Jacob M. Litman
+ */
+public final class IntegrationCache {
+    private final int maxEntries;
+    private final ReferenceQueue<DataSet> collected = new ReferenceQueue<>();
+    private final Map<Key, Entry> cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates an empty cache.
+     * @param maxEntries Maximum number of cached results
+     */
+    public IntegrationCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException(String.format(" Cache size %d is not positive", maxEntries));
+        }
+        this.maxEntries = maxEntries;
+        cache = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > IntegrationCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Integrates an entire DataSet as UltraNewIntegration.integrate does,
+     * from the cache where possible.
+     * @param data DataSet to integrate
+     * @param type Integration rule
+     * @param side Side to align the rule to
+     * @return Area
+     */
+    public double integrate(DataSet data, IntegrationType type, IntegrationSide side) {
+        return lookup(data, type, side, 0, data.numPoints() - 1, true);
+    }
+
+    /**
+     * Integrates from point lb to point ub as the rule's range method in
+     * UltraNewIntegration does, from the cache where possible.
+     * @param data DataSet to integrate
+     * @param type Integration rule
+     * @param side Side to align the rule to
+     * @param lb Lower index
+     * @param ub Upper index
+     * @return Area
+     */
+    public double integrate(DataSet data, IntegrationType type, IntegrationSide side, int lb, int ub) {
+        if (lb < 0 || ub >= data.numPoints() || lb > ub) {
+            throw new IllegalArgumentException(String.format(" Range [%d, %d] outside [0, %d)", lb, ub, data.numPoints()));
+        }
+        return lookup(data, type, side, lb, ub, false);
+    }
+
+    private double lookup(DataSet data, IntegrationType type, IntegrationSide side, int lb, int ub, boolean whole) {
+        if (data instanceof ConcurrentHistogram) {
+            throw new IllegalArgumentException(" A live ConcurrentHistogram cannot be cached; cache its snapshot() instead");
+        }
+        long version = (data instanceof MutableDataSet) ? ((MutableDataSet) data).getVersion() : 0L;
+        Key probe = new Key(data, type, side, lb, ub, whole, null);
+        Entry entry;
+        synchronized (cache) {
+            purge();
+            entry = cache.get(probe);
+        }
+        if (entry != null && entry.version == version) {
+            hits.increment();
+            return entry.area;
+        }
+        misses.increment();
+        // Computed outside the lock; a racing thread may compute the same result.
+        double area = whole ? UltraNewIntegration.integrate(data, type, side) : integrateRange(data, type, side, lb, ub);
+        Key key = new Key(data, type, side, lb, ub, whole, collected);
+        synchronized (cache) {
+            cache.put(key, new Entry(area, version));
+        }
+        return area;
+    }
+
+    private static double integrateRange(DataSet data, IntegrationType type, IntegrationSide side, int lb, int ub) {
+        switch (type) {
+            case RECTANGULAR:
+                return UltraNewIntegration.rectangular(data, side, lb, ub);
+            case SIMPSONS:
+                return UltraNewIntegration.simpsons(data, side, lb, ub);
+            case BOOLE:
+                return UltraNewIntegration.boole(data, side, lb, ub);
+            case TRAPEZOIDAL:
+            default:
+                return UltraNewIntegration.trapezoidal(data, side, lb, ub);
+        }
+    }
+
+    /**
+     * Drops entries whose data sets have been collected; holds the lock.
+     */
+    private void purge() {
+        Reference<? extends DataSet> ref;
+        while ((ref = collected.poll()) != null) {
+            cache.remove((Key) ref);
+        }
+    }
+
+    /**
+     * Number of cached results, after dropping those whose data sets have
+     * been collected.
+     * @return Size
+     */
+    public int size() {
+        synchronized (cache) {
+            purge();
+            return cache.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            purge();
+            cache.clear();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private static final class Entry {
+        private final double area;
+        private final long version;
+
+        Entry(double area, long version) {
+            this.area = area;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Weak identity key; a cleared key only equals itself.
+     */
+    private static final class Key extends WeakReference<DataSet> {
+        private final int hash;
+        private final IntegrationType type;
+        private final IntegrationSide side;
+        private final int lb;
+        private final int ub;
+        private final boolean whole;
+
+        Key(DataSet data, IntegrationType type, IntegrationSide side, int lb, int ub, boolean whole, ReferenceQueue<DataSet> queue) {
+            super(data, queue);
+            this.type = type;
+            this.side = side;
+            this.lb = lb;
+            this.ub = ub;
+            this.whole = whole;
+            int h = System.identityHashCode(data);
+            h = (31 * h) + type.ordinal();
+            h = (31 * h) + side.ordinal();
+            h = (31 * h) + lb;
+            h = (31 * h) + ub;
+            hash = (2 * h) + (whole ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            DataSet data = get();
+            return data != null && data == other.get() && type == other.type && side == other.side
+                    && lb == other.lb && ub == other.ub && whole == other.whole;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file-backed DataSet, for profiles too large to hold on the heap. The file
+ * is a 32-byte header (lower bound, upper bound, point count, flags with bit 0
+ * set for half-width ends, 4 reserved bytes) followed by the points; all
+ * values are little-endian. The points are memory-mapped in fixed-size
+ * windows, so files larger than 2 GB work and integration streams through the
+ * mapping without copying it onto the heap.
+ * @author Jacob M. Litman
+ */
+public class MappedDataSet implements DataSet, Closeable {
+    /**
+     * Size of the file header in bytes.
+     */
+    public static final int HEADER_BYTES = 32;
+    /**
+     * Default number of points per mapped window (128 MB).
+     */
+    public static final int DEFAULT_WINDOW_POINTS = 1 << 24;
+    private static final int HALF_WIDTH_FLAG = 1;
+
+    private final FileChannel channel;
+    private final DoubleBuffer[] windows;
+    private final int windowShift;
+    private final int windowMask;
+    private final double lb;
+    private final double ub;
+    private final int nX;
+    private final double sep;
+    private final boolean halfWidthEnd;
+
+    private MappedDataSet(FileChannel channel, int windowPoints) throws IOException {
+        if (Integer.bitCount(windowPoints) != 1) {
+            throw new IllegalArgumentException(String.format(" Window size %d is not a power of 2", windowPoints));
+        }
+        this.channel = channel;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException(" File too short for a MappedDataSet header");
+            }
+        }
+        header.flip();
+        lb = header.getDouble();
+        ub = header.getDouble();
+        long count = header.getLong();
+        halfWidthEnd = (header.getInt() & HALF_WIDTH_FLAG) != 0;
+        int minPoints = halfWidthEnd ? 3 : 2;
+        if (count < minPoints || count > Integer.MAX_VALUE) {
+            throw new IOException(String.format(" Invalid point count %d", count));
+        }
+        nX = (int) count;
+        if (channel.size() < HEADER_BYTES + (8L * nX)) {
+            throw new IOException(String.format(" File too short for %d points", nX));
+        }
+        double sepDist = ub - lb;
+        sep = halfWidthEnd ? (sepDist / ((double) nX-2)) : (sepDist / ((double) nX-1));
+
+        windowShift = Integer.numberOfTrailingZeros(windowPoints);
+        windowMask = windowPoints - 1;
+        int nWindows = ((nX - 1) >>> windowShift) + 1;
+        windows = new DoubleBuffer[nWindows];
+        for (int i = 0; i < nWindows; i++) {
+            long first = ((long) i) << windowShift;
+            long len = Math.min(windowPoints, nX - first);
+            windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + (8L * first), 8L * len)
+                    .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        }
+    }
+
+    /**
+     * Opens a file written by write, with the default window size.
+     * @param path File
+     * @return Mapped DataSet
+     * @throws IOException If the file cannot be opened or mapped
+     */
+    public static MappedDataSet open(Path path) throws IOException {
+        return open(path, DEFAULT_WINDOW_POINTS);
+    }
+
+    /**
+     * Opens a file written by write.
+     * @param path File
+     * @param windowPoints Points per mapped window; a power of 2
+     * @return Mapped DataSet
+     * @throws IOException If the file cannot be opened or mapped
+     */
+    public static MappedDataSet open(Path path, int windowPoints) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new MappedDataSet(channel, windowPoints);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Writes a DataSet in the MappedDataSet file layout, streaming its points
+     * through copyRange.
+     * @param path File to create or overwrite
+     * @param data DataSet to write
+     * @throws IOException If the file cannot be written
+     */
+    public static void write(Path path, DataSet data) throws IOException {
+        int nPoints = data.numPoints();
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putDouble(data.lowerBound());
+            header.putDouble(data.upperBound());
+            header.putLong(nPoints);
+            header.putInt(data.halfWidthEnds() ? HALF_WIDTH_FLAG : 0);
+            header.putInt(0);
+            header.flip();
+            writeFully(out, header);
+
+            double[] chunk = new double[PointSums.CHUNK];
+            ByteBuffer bytes = ByteBuffer.allocate(8 * PointSums.CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+            for (int start = 0; start < nPoints; start += PointSums.CHUNK) {
+                int len = Math.min(PointSums.CHUNK, nPoints - start);
+                data.copyRange(start, chunk, 0, len);
+                bytes.clear();
+                bytes.asDoubleBuffer().put(chunk, 0, len);
+                bytes.limit(8 * len);
+                writeFully(out, bytes);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    @Override
+    public double lowerBound() {
+        return lb;
+    }
+
+    @Override
+    public double upperBound() {
+        return ub;
+    }
+
+    @Override
+    public int numPoints() {
+        return nX;
+    }
+
+    @Override
+    public double binWidth() {
+        return sep;
+    }
+
+    @Override
+    public double getPoint(int index) {
+        return windows[index >>> windowShift].get(index & windowMask);
+    }
+
+    /**
+     * Returns a heap copy of every point; avoid for files larger than the heap.
+     * @return Copy of the points
+     */
+    @Override
+    public double[] getAllPoints() {
+        double[] pts = new double[nX];
+        copyRange(0, pts, 0, nX);
+        return pts;
+    }
+
+    @Override
+    public void copyRange(int index, double[] dest, int destPos, int length) {
+        while (length > 0) {
+            int offset = index & windowMask;
+            DoubleBuffer window = windows[index >>> windowShift].duplicate();
+            int len = Math.min(length, window.limit() - offset);
+            window.position(offset);
+            window.get(dest, destPos, len);
+            index += len;
+            destPos += len;
+            length -= len;
+        }
+    }
+
+    @Override
+    public boolean halfWidthEnds() {
+        return halfWidthEnd;
+    }
+
+    /**
+     * Closes the underlying file. Mapped windows are released by the garbage
+     * collector; the DataSet must not be used afterwards.
+     * @throws IOException If the channel cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
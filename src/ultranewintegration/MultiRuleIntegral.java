@@ -0,0 +1,144 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+import java.util.concurrent.ForkJoinPool;
+import ultranewintegration.UltraNewIntegration.IntegrationSide;
+import ultranewintegration.UltraNewIntegration.IntegrationType;
+
+/**
+ * Every integration rule, for both sides, from a single pass over a DataSet.
+ * The pass collects sums of points split by index modulo 4; since every rule's
+ * weights repeat with a period dividing 4, all eight areas follow from those
+ * sums and a few points at either end (see ResidueRules).
+ *
+ * Error estimates compare each rule with the next higher-order rule on the
+ * same grid: the difference approximates the lower-order rule's error. Boole's
+ * rule has no higher-order neighbour, so its estimate is the Simpson's-Boole's
+ * difference scaled by 1/15, as in Richardson extrapolation of Simpson's rule.
+ * Pieces that two rules integrate the same way cancel from that difference:
+ * a leftover trapezoidal bin is shared by Simpson's and Boole's rules, so the
+ * disagreement between the LEFT and RIGHT alignments (which put the leftover
+ * bins at opposite ends) bounds the estimate from below; half-width end bins
+ * are trapezoidal under every rule but the rectangular, so their error is
+ * estimated from the second derivative at each end and added.
+ * @author Jacob M. Litman
+ */
+public final class MultiRuleIntegral {
+    private final double[][] areas = new double[IntegrationType.values().length][IntegrationSide.values().length];
+    /**
+     * Estimated error of the trapezoidal half-width end bins, or 0.
+     */
+    private final double endError;
+
+    /**
+     * Integrates a DataSet by every rule in one sequential pass.
+     * @param data DataSet to integrate
+     */
+    public MultiRuleIntegral(DataSet data) {
+        this(data, PointSums::residueSums);
+    }
+
+    /**
+     * Integrates a DataSet by every rule in one parallel pass.
+     * @param data DataSet to integrate; must support concurrent reads
+     * @param pool Pool to run in
+     */
+    public MultiRuleIntegral(DataSet data, ForkJoinPool pool) {
+        this(data, ParallelIntegration.summer(pool));
+    }
+
+    private MultiRuleIntegral(DataSet data, UltraNewIntegration.ResidueSummer summer) {
+        int lb = 0;
+        int ub = data.numPoints() - 1;
+        if (data.halfWidthEnds()) {
+            lb++;
+            ub--;
+        }
+        double[] sums = new double[4];
+        summer.residueSums(data, lb, ub - lb + 1, 4, sums);
+        double width = data.binWidth();
+        for (IntegrationType type : IntegrationType.values()) {
+            for (IntegrationSide side : IntegrationSide.values()) {
+                double area = ResidueRules.area(type, side, lb, ub, sums, data::getPoint) * width;
+                if (data.halfWidthEnds()) {
+                    area += (type == IntegrationType.RECTANGULAR)
+                            ? UltraNewIntegration.rectangularEnds(data, side)
+                            : UltraNewIntegration.trapezoidalEnds(data, side);
+                }
+                areas[type.ordinal()][side.ordinal()] = area;
+            }
+        }
+        endError = data.halfWidthEnds() ? endError(data) : 0.0;
+    }
+
+    /**
+     * Trapezoidal error (w^3 / 12) f'' of both half-width end bins, with f''
+     * from the second divided difference of the three points at each end.
+     */
+    private static double endError(DataSet data) {
+        int n = data.numPoints();
+        if (n < 4) {
+            return 0.0;
+        }
+        double h = data.binWidth();
+        double w = 0.5 * h;
+        // Spacings at each end are w then h.
+        double lower = ((data.getPoint(2) - data.getPoint(1)) / h - (data.getPoint(1) - data.getPoint(0)) / w) / (w + h);
+        double upper = ((data.getPoint(n - 1) - data.getPoint(n - 2)) / w - (data.getPoint(n - 2) - data.getPoint(n - 3)) / h) / (w + h);
+        return (w * w * w / 12.0) * 2.0 * (Math.abs(lower) + Math.abs(upper));
+    }
+
+    /**
+     * Area by one rule; equal to UltraNewIntegration.integrate up to rounding.
+     * @param type Integration rule
+     * @param side Side the rule was aligned to
+     * @return Area
+     */
+    public double getArea(IntegrationType type, IntegrationSide side) {
+        return areas[type.ordinal()][side.ordinal()];
+    }
+
+    /**
+     * Estimated absolute error of one rule's area.
+     * @param type Integration rule
+     * @param side Side the rule was aligned to
+     * @return Error estimate
+     */
+    public double errorEstimate(IntegrationType type, IntegrationSide side) {
+        double area = getArea(type, side);
+        double sides = Math.abs(getArea(type, IntegrationSide.LEFT) - getArea(type, IntegrationSide.RIGHT));
+        switch (type) {
+            case RECTANGULAR:
+                return Math.max(Math.abs(getArea(IntegrationType.TRAPEZOIDAL, side) - area), sides);
+            case TRAPEZOIDAL:
+                return Math.max(Math.abs(getArea(IntegrationType.SIMPSONS, side) - area), sides) + endError;
+            case SIMPSONS:
+                return Math.max(Math.abs(getArea(IntegrationType.BOOLE, side) - area), sides) + endError;
+            case BOOLE:
+            default:
+                return Math.max(Math.abs(area - getArea(IntegrationType.SIMPSONS, side)) / 15.0, sides) + endError;
+        }
+    }
+
+    /**
+     * Boole's rule area, averaged over both sides.
+     * @return Best area
+     */
+    public double bestEstimate() {
+        return 0.5 * (getArea(IntegrationType.BOOLE, IntegrationSide.LEFT)
+                + getArea(IntegrationType.BOOLE, IntegrationSide.RIGHT));
+    }
+
+    /**
+     * Error estimate of bestEstimate().
+     * @return Error estimate
+     */
+    public double bestErrorEstimate() {
+        return Math.max(errorEstimate(IntegrationType.BOOLE, IntegrationSide.LEFT),
+                errorEstimate(IntegrationType.BOOLE, IntegrationSide.RIGHT));
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import ultranewintegration.UltraNewIntegration.IntegrationSide;
+import ultranewintegration.UltraNewIntegration.IntegrationType;
+
+/**
+ * A uniform-grid DataSet whose points may be updated in place, for profiles
+ * that change a few bins at a time. Every update bumps a version counter.
+ *
+ * Live integrals attached for chosen rules are kept current as points change:
+ * an integral is binWidth times the dot product of the points with the rule's
+ * QuadratureWeights, so changing one point changes it by that point's weight
+ * times the delta. Deltas are added with Kahan compensation, and each live
+ * integral is fully resummed after as many updates as there are points, or
+ * MIN_RESUM_INTERVAL updates if that is more, which bounds drift at O(1)
+ * amortized cost per update. An update whose delta or new sum is not finite
+ * resums at once, since an infinity, once added, cannot be subtracted out.
+ *
+ * Not synchronized.
+ * @author Jacob M. Litman
+ */
+public class MutableDataSet implements DataSet {
+    /**
+     * Minimum number of updates between full resummations.
+     */
+    static final int MIN_RESUM_INTERVAL = 1024;
+
+    private final double lb;
+    private final double ub;
+    private final int nX;
+    private final double sep;
+    private final boolean halfWidthEnd;
+    private final double[] fX;
+    private final List<LiveIntegral> integrals = new ArrayList<>();
+    private long version = 0;
+
+    /**
+     * Creates a data set of zeros.
+     * @param lb Lower bound
+     * @param ub Upper bound
+     * @param nPoints Number of points
+     * @param halfWidthEnds Whether the end bins are half-width
+     */
+    public MutableDataSet(double lb, double ub, int nPoints, boolean halfWidthEnds) {
+        this(lb, ub, new double[nPoints], halfWidthEnds);
+    }
+
+    private MutableDataSet(double lb, double ub, double[] fX, boolean halfWidthEnds) {
+        int nPoints = fX.length;
+        if (nPoints < (halfWidthEnds ? 3 : 2) || !(ub > lb)) {
+            throw new IllegalArgumentException(String.format(" Invalid grid: %d points over [%g, %g]", nPoints, lb, ub));
+        }
+        this.lb = lb;
+        this.ub = ub;
+        this.nX = nPoints;
+        this.halfWidthEnd = halfWidthEnds;
+        this.fX = fX;
+        sep = (ub - lb) / (halfWidthEnds ? nPoints - 2 : nPoints - 1);
+    }
+
+    /**
+     * Takes ownership of fX without copying it; the caller must not use the
+     * array afterwards.
+     * @param lb Lower bound
+     * @param ub Upper bound
+     * @param fX Points, adopted
+     * @param halfWidthEnds Whether the end bins are half-width
+     * @return Data set backed by fX
+     */
+    public static MutableDataSet wrap(double lb, double ub, double[] fX, boolean halfWidthEnds) {
+        return new MutableDataSet(lb, ub, fX, halfWidthEnds);
+    }
+
+    /**
+     * Sets the point at index.
+     * @param index Index
+     * @param value New value
+     */
+    public void set(int index, double value) {
+        double delta = value - fX[index];
+        fX[index] = value;
+        updated(index, delta);
+    }
+
+    /**
+     * Adds delta to the point at index.
+     * @param index Index
+     * @param delta Value to add
+     */
+    public void add(int index, double delta) {
+        fX[index] += delta;
+        updated(index, delta);
+    }
+
+    private void updated(int index, double delta) {
+        version++;
+        for (LiveIntegral integral : integrals) {
+            integral.update(index, delta);
+        }
+    }
+
+    /**
+     * Number of updates made so far; changes whenever any point does.
+     * @return Version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Attaches a live integral for a rule, or returns the one already attached.
+     * @param type Integration rule
+     * @param side Side to align the rule to
+     * @return Live integral
+     */
+    public LiveIntegral liveIntegral(IntegrationType type, IntegrationSide side) {
+        for (LiveIntegral integral : integrals) {
+            if (integral.type == type && integral.side == side) {
+                return integral;
+            }
+        }
+        LiveIntegral integral = new LiveIntegral(type, side);
+        integrals.add(integral);
+        return integral;
+    }
+
+    /**
+     * Detaches a live integral, which then stops updating.
+     * @param integral Live integral
+     */
+    public void detach(LiveIntegral integral) {
+        integrals.remove(integral);
+    }
+
+    @Override
+    public double lowerBound() {
+        return lb;
+    }
+
+    @Override
+    public double upperBound() {
+        return ub;
+    }
+
+    @Override
+    public int numPoints() {
+        return nX;
+    }
+
+    @Override
+    public double binWidth() {
+        return sep;
+    }
+
+    @Override
+    public double getPoint(int index) {
+        return fX[index];
+    }
+
+    @Override
+    public double[] getAllPoints() {
+        return Arrays.copyOf(fX, nX);
+    }
+
+    @Override
+    public void copyRange(int index, double[] dest, int destPos, int length) {
+        System.arraycopy(fX, index, dest, destPos, length);
+    }
+
+    @Override
+    public boolean halfWidthEnds() {
+        return halfWidthEnd;
+    }
+
+    /**
+     * An integral of the data set by one rule, kept current as points change.
+     */
+    public final class LiveIntegral {
+        private final IntegrationType type;
+        private final IntegrationSide side;
+        private final double[] weights;
+        private final int resumInterval;
+        private double sum;
+        private double compensation;
+        private int updates;
+
+        private LiveIntegral(IntegrationType type, IntegrationSide side) {
+            this.type = type;
+            this.side = side;
+            weights = QuadratureWeights.get(nX, type, side, halfWidthEnd);
+            resumInterval = Math.max(MIN_RESUM_INTERVAL, nX);
+            resum();
+        }
+
+        private void update(int index, double delta) {
+            double w = weights[index];
+            if (w == 0.0) {
+                return;
+            }
+            if (++updates >= resumInterval) {
+                resum();
+                return;
+            }
+            double y = (w * delta) - compensation;
+            double t = sum + y;
+            if (!Double.isFinite(y) || !Double.isFinite(t)) {
+                resum();
+                return;
+            }
+            compensation = (t - sum) - y;
+            sum = t;
+        }
+
+        /**
+         * Recomputes the integral from every point, discarding drift.
+         */
+        public void resum() {
+            sum = PointSums.dot(MutableDataSet.this, weights);
+            compensation = 0.0;
+            updates = 0;
+        }
+
+        /**
+         * Current integral of the data set by this rule.
+         * @return Area
+         */
+        public double getArea() {
+            return sum * sep;
+        }
+
+        /**
+         * Rule this integral is kept by.
+         * @return Integration rule
+         */
+        public IntegrationType getType() {
+            return type;
+        }
+
+        /**
+         * Side the rule is aligned to.
+         * @return Side
+         */
+        public IntegrationSide getSide() {
+            return side;
+        }
+    }
+}
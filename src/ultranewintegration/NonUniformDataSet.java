@@ -0,0 +1,125 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+import java.util.Arrays;
+
+/**
+ * A set of x, f(x) on an arbitrary strictly increasing grid, such as
+ * adaptively sampled data, integrated by NonUniformIntegration. Bin widths are
+ * computed once on construction.
+ *
+ * This is deliberately not a DataSet: the uniform-grid integrators take
+ * binWidth() as the spacing of every bin, which a non-uniform grid does not
+ * have, so they cannot be handed one by mistake.
+ * @author Jacob M. Litman
+ */
+public class NonUniformDataSet {
+
+    private final double[] x;
+    private final double[] fX;
+    private final double[] widths;
+    private final int nX;
+
+    public NonUniformDataSet(double[] x, double[] fX) {
+        nX = x.length;
+        if (nX < 2 || fX.length != nX) {
+            throw new IllegalArgumentException(String.format(" Need at least 2 points with one f(x) each: %d x, %d f(x)", nX, fX.length));
+        }
+        this.x = Arrays.copyOf(x, nX);
+        this.fX = Arrays.copyOf(fX, nX);
+        widths = new double[nX - 1];
+        for (int i = 0; i < nX - 1; i++) {
+            widths[i] = x[i + 1] - x[i];
+            if (!(widths[i] > 0)) {
+                throw new IllegalArgumentException(String.format(" x is not strictly increasing at index %d: %g, %g", i, x[i], x[i + 1]));
+            }
+        }
+    }
+
+    /**
+     * Lowest x.
+     * @return x[0]
+     */
+    public double lowerBound() {
+        return x[0];
+    }
+
+    /**
+     * Highest x.
+     * @return Last x
+     */
+    public double upperBound() {
+        return x[nX - 1];
+    }
+
+    /**
+     * Number of points.
+     * @return Number of points
+     */
+    public int numPoints() {
+        return nX;
+    }
+
+    /**
+     * f(x) at index.
+     * @param index Index
+     * @return f(x)
+     */
+    public double getPoint(int index) {
+        return fX[index];
+    }
+
+    /**
+     * Returns a copy of the f(x) array.
+     * @return f(x)
+     */
+    public double[] getAllPoints() {
+        return Arrays.copyOf(fX, nX);
+    }
+
+    /**
+     * x at index.
+     * @param index Index
+     * @return x
+     */
+    public double getX(int index) {
+        return x[index];
+    }
+
+    /**
+     * Returns a copy of the x array.
+     * @return x
+     */
+    public double[] getAllX() {
+        return Arrays.copyOf(x, nX);
+    }
+
+    /**
+     * Width of bin index, from x[index] to x[index + 1].
+     * @param index Bin
+     * @return Width
+     */
+    public double width(int index) {
+        return widths[index];
+    }
+
+    /**
+     * Finds the bin holding a value by binary search.
+     * @param value x, within [lowerBound(), upperBound()]
+     * @return Bin i with x[i] &lt;= value &lt;= x[i + 1]
+     */
+    public int binOf(double value) {
+        if (value < x[0] || value > x[nX - 1]) {
+            throw new IllegalArgumentException(String.format(" %g is outside [%g, %g]", value, x[0], x[nX - 1]));
+        }
+        int i = Arrays.binarySearch(x, value);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        return Math.min(i, nX - 2);
+    }
+}
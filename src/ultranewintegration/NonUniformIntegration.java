@@ -0,0 +1,177 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+import ultranewintegration.UltraNewIntegration.IntegrationSide;
+import ultranewintegration.UltraNewIntegration.IntegrationType;
+
+/**
+ * Integrators for NonUniformDataSet: the trapezoidal rule, and Simpson's rule
+ * generalized to pairs of unequal bins (the integral of the parabola through
+ * each pair's three points). An odd bin left over by Simpson's rule is
+ * integrated over the parabola through it and its neighbouring point, so it
+ * keeps Simpson's order rather than dropping to the trapezoidal rule.
+ * @author Jacob M. Litman
+ */
+public final class NonUniformIntegration {
+
+    private NonUniformIntegration() {
+    }
+
+    public static double trapezoidal(NonUniformDataSet data) {
+        return trapezoidal(data, 0, data.numPoints() - 1);
+    }
+
+    /**
+     * Trapezoidal rule from point lb to point ub.
+     * @param data Data to integrate
+     * @param lb Lower index
+     * @param ub Upper index
+     * @return Area
+     */
+    public static double trapezoidal(NonUniformDataSet data, int lb, int ub) {
+        double area = 0.0;
+        for (int i = lb; i < ub; i++) {
+            area += data.width(i) * (data.getPoint(i) + data.getPoint(i + 1));
+        }
+        return 0.5 * area;
+    }
+
+    public static double simpsons(NonUniformDataSet data, IntegrationSide side) {
+        return simpsons(data, side, 0, data.numPoints() - 1);
+    }
+
+    /**
+     * Non-uniform Simpson's rule from point lb to point ub. Pairs of bins are
+     * aligned to lb (LEFT) or ub (RIGHT); an odd bin left over at the other
+     * end, or a single bin, uses the parabola through a neighbouring point.
+     * With fewer than 3 points the trapezoidal rule is used.
+     * @param data Data to integrate
+     * @param side Side to align the pairs to
+     * @param lb Lower index
+     * @param ub Upper index
+     * @return Area
+     */
+    public static double simpsons(NonUniformDataSet data, IntegrationSide side, int lb, int ub) {
+        int span = ub - lb;
+        if (span == 1 && data.numPoints() >= 3) {
+            return (lb + 2 < data.numPoints()) ? firstBin(data, lb) : lastBin(data, lb - 1);
+        }
+        if (span < 2) {
+            return trapezoidal(data, lb, ub);
+        }
+        int remainder = span % 2;
+        int start = (side == IntegrationSide.RIGHT) ? lb + remainder : lb;
+        int end = start + span - remainder;
+
+        double area = 0.0;
+        for (int i = start; i < end; i += 2) {
+            double h0 = data.width(i);
+            double h1 = data.width(i + 1);
+            double sum = h0 + h1;
+            area += (sum / 6.0) * (((2.0 - (h1 / h0)) * data.getPoint(i))
+                    + ((sum * sum / (h0 * h1)) * data.getPoint(i + 1))
+                    + ((2.0 - (h0 / h1)) * data.getPoint(i + 2)));
+        }
+        if (remainder > 0) {
+            if (side == IntegrationSide.RIGHT) {
+                area += firstBin(data, lb);
+            } else {
+                area += lastBin(data, ub - 2);
+            }
+        }
+        return area;
+    }
+
+    /**
+     * Integral from a to b, where both lie in [lowerBound(), upperBound()].
+     * Whole bins use the rule (Simpson's pairs aligned LEFT from the first
+     * whole bin); partial bins at either end use the rule's interpolant.
+     * @param data Data to integrate
+     * @param a Lower limit
+     * @param b Upper limit
+     * @param type TRAPEZOIDAL or SIMPSONS
+     * @return Integral; negated if a is greater than b
+     */
+    public static double integrate(NonUniformDataSet data, double a, double b, IntegrationType type) {
+        if (type != IntegrationType.TRAPEZOIDAL && type != IntegrationType.SIMPSONS) {
+            throw new IllegalArgumentException(String.format(" Non-uniform integration does not support %s", type));
+        }
+        if (a > b) {
+            return -integrate(data, b, a, type);
+        }
+        int i = data.binOf(a);
+        int j = data.binOf(b);
+        if (i == j) {
+            return partial(data, i, a, b, type);
+        }
+        double area = partial(data, i, a, data.getX(i + 1), type);
+        area += (type == IntegrationType.SIMPSONS)
+                ? simpsons(data, IntegrationSide.LEFT, i + 1, j)
+                : trapezoidal(data, i + 1, j);
+        area += partial(data, j, data.getX(j), b, type);
+        return area;
+    }
+
+    /**
+     * Integral over [from, to] within bin i, of the line through the bin or
+     * the parabola through the bin and a neighbouring point.
+     */
+    private static double partial(NonUniformDataSet data, int i, double from, double to, IntegrationType type) {
+        if (to <= from) {
+            return 0.0;
+        }
+        int n = data.numPoints();
+        if (type == IntegrationType.TRAPEZOIDAL || n < 3) {
+            double x0 = data.getX(i);
+            double slope = (data.getPoint(i + 1) - data.getPoint(i)) / data.width(i);
+            double f0 = data.getPoint(i) + (slope * (from - x0));
+            double f1 = data.getPoint(i) + (slope * (to - x0));
+            return 0.5 * (to - from) * (f0 + f1);
+        }
+        int k = (i + 2 < n) ? i : i - 1;
+        // Simpson's rule is exact for the parabola.
+        double mid = 0.5 * (from + to);
+        return ((to - from) / 6.0) * (parabola(data, k, from) + (4.0 * parabola(data, k, mid)) + parabola(data, k, to));
+    }
+
+    /**
+     * Parabola through points k, k + 1 and k + 2, evaluated at x.
+     */
+    private static double parabola(NonUniformDataSet data, int k, double x) {
+        double x0 = data.getX(k);
+        double x1 = data.getX(k + 1);
+        double x2 = data.getX(k + 2);
+        return (data.getPoint(k) * ((x - x1) * (x - x2)) / ((x0 - x1) * (x0 - x2)))
+                + (data.getPoint(k + 1) * ((x - x0) * (x - x2)) / ((x1 - x0) * (x1 - x2)))
+                + (data.getPoint(k + 2) * ((x - x0) * (x - x1)) / ((x2 - x0) * (x2 - x1)));
+    }
+
+    /**
+     * Integral over bin k of the parabola through points k, k + 1 and k + 2.
+     */
+    private static double firstBin(NonUniformDataSet data, int k) {
+        double h0 = data.width(k);
+        double h1 = data.width(k + 1);
+        double sum = h0 + h1;
+        return (h0 / 6.0) * (((((2.0 * h0) + (3.0 * h1)) / sum) * data.getPoint(k))
+                + (((h0 + (3.0 * h1)) / h1) * data.getPoint(k + 1))
+                - ((h0 * h0 / (h1 * sum)) * data.getPoint(k + 2)));
+    }
+
+    /**
+     * Integral over bin k + 1 of the parabola through points k, k + 1 and
+     * k + 2.
+     */
+    private static double lastBin(NonUniformDataSet data, int k) {
+        double h0 = data.width(k);
+        double h1 = data.width(k + 1);
+        double sum = h0 + h1;
+        return (h1 / 6.0) * ((-(h1 * h1 / (h0 * sum)) * data.getPoint(k))
+                + (((h1 + (3.0 * h0)) / h0) * data.getPoint(k + 1))
+                + ((((2.0 * h1) + (3.0 * h0)) / sum) * data.getPoint(k + 2)));
+    }
+}
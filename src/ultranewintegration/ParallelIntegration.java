@@ -0,0 +1,127 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import ultranewintegration.UltraNewIntegration.IntegrationSide;
+import ultranewintegration.UltraNewIntegration.IntegrationType;
+import ultranewintegration.UltraNewIntegration.ResidueSummer;
+
+/**
+ * Fork/join integration of very large DataSets. The rule layout, half-width
+ * ends and remainder corrections are exactly those of UltraNewIntegration;
+ * only the bulk sums are computed in parallel.
+ *
+ * The sums are split into fixed-size leaves, aligned to the rule's stride,
+ * and combined pairwise over a tree whose shape depends only on the number
+ * of points, and each leaf is summed by PointSums.SCALAR rather than the
+ * vector kernel, whose lane count and reduction order vary with the CPU and
+ * with whether jdk.incubator.vector is loaded. Results are therefore
+ * bit-identical for any pool size, machine and JVM flags, though they may
+ * differ in the last few bits from the serial integrators.
+ * @author Jacob M. Litman
+ */
+public final class ParallelIntegration {
+    /**
+     * Points per leaf; a multiple of every rule stride (1, 2 and 4).
+     */
+    static final int LEAF_SIZE = 1 << 16;
+
+    private ParallelIntegration() {
+    }
+
+    /**
+     * Integrates an entire DataSet in the common fork/join pool.
+     * @param data DataSet to integrate
+     * @param type Integration rule
+     * @param side Side to align the rule to
+     * @return Area
+     */
+    public static double integrate(DataSet data, IntegrationType type, IntegrationSide side) {
+        return integrate(data, type, side, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Integrates an entire DataSet in the given fork/join pool. The DataSet
+     * must support concurrent reads.
+     * @param data DataSet to integrate
+     * @param type Integration rule
+     * @param side Side to align the rule to
+     * @param pool Pool to run in
+     * @return Area
+     */
+    public static double integrate(DataSet data, IntegrationType type, IntegrationSide side, ForkJoinPool pool) {
+        return UltraNewIntegration.integrate(data, type, side, summer(pool));
+    }
+
+    /**
+     * Residue sums computed over the fixed leaf tree in pool.
+     * @param pool Pool to run in
+     * @return Parallel ResidueSummer
+     */
+    static ResidueSummer summer(ForkJoinPool pool) {
+        return (DataSet data, int from, int count, int period, double[] sums) -> {
+            if (count <= 0) {
+                return;
+            }
+            int nLeaves = ((count - 1) / LEAF_SIZE) + 1;
+            double[] total;
+            if (nLeaves == 1) {
+                total = new double[period];
+                PointSums.residueSums(data, from, count, period, total, PointSums.SCALAR);
+            } else {
+                total = pool.invoke(new ResidueTask(data, from, count, period, 0, nLeaves));
+            }
+            for (int i = 0; i < period; i++) {
+                sums[i] += total[i];
+            }
+        };
+    }
+
+    /**
+     * Sums leaves [loLeaf, hiLeaf) by splitting at the midpoint leaf.
+     */
+    private static final class ResidueTask extends RecursiveTask<double[]> {
+        private static final long serialVersionUID = 1L;
+        private final DataSet data;
+        private final int from;
+        private final int count;
+        private final int period;
+        private final int loLeaf;
+        private final int hiLeaf;
+
+        ResidueTask(DataSet data, int from, int count, int period, int loLeaf, int hiLeaf) {
+            this.data = data;
+            this.from = from;
+            this.count = count;
+            this.period = period;
+            this.loLeaf = loLeaf;
+            this.hiLeaf = hiLeaf;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (hiLeaf - loLeaf == 1) {
+                int start = loLeaf * LEAF_SIZE;
+                int len = Math.min(LEAF_SIZE, count - start);
+                double[] sums = new double[period];
+                PointSums.residueSums(data, from + start, len, period, sums, PointSums.SCALAR);
+                return sums;
+            }
+            int mid = (loLeaf + hiLeaf) >>> 1;
+            ResidueTask lower = new ResidueTask(data, from, count, period, loLeaf, mid);
+            ResidueTask upper = new ResidueTask(data, from, count, period, mid, hiLeaf);
+            upper.fork();
+            double[] sums = lower.compute();
+            double[] upperSums = upper.join();
+            for (int i = 0; i < period; i++) {
+                sums[i] += upperSums[i];
+            }
+            return sums;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+/**
+ * Summation kernels shared by the integrators. Points are read from a DataSet
+ * through DataSet.copyRange in fixed-size chunks, so no integration allocates
+ * memory proportional to the number of points.
+ * @author Jacob M. Litman
+ */
+final class PointSums {
+    /**
+     * Points read per chunk. A multiple of 4, so that chunk boundaries never
+     * break the stride-2 (Simpson's) or stride-4 (Boole's) weight patterns.
+     */
+    static final int CHUNK = 1024;
+    /**
+     * Set to false to disable the jdk.incubator.vector kernels.
+     */
+    static final String VECTORIZE_PROPERTY = "ultranewintegration.vectorize";
+    /**
+     * Plain Java kernel.
+     */
+    static final SumKernel SCALAR = PointSums::residueSums;
+    /**
+     * Kernel used by the integrators: the Vector API kernel when the
+     * jdk.incubator.vector module is available, otherwise SCALAR.
+     */
+    static final SumKernel KERNEL = loadKernel();
+
+    private PointSums() {
+    }
+
+    /**
+     * Sums count points starting at index from, split by offset modulo period:
+     * sums[r] accumulates every point at from + k where k % period == r.
+     * @param data DataSet to read
+     * @param from First point
+     * @param count Number of points; non-positive counts add nothing
+     * @param period 1, 2 or 4
+     * @param sums Accumulator of length at least period
+     */
+    static void residueSums(DataSet data, int from, int count, int period, double[] sums) {
+        residueSums(data, from, count, period, sums, KERNEL);
+    }
+
+    /**
+     * residueSums through a given kernel, for callers that need a summation
+     * order independent of the CPU and JVM flags.
+     * @param data DataSet to read
+     * @param from First point
+     * @param count Number of points; non-positive counts add nothing
+     * @param period 1, 2 or 4
+     * @param sums Accumulator of length at least period
+     * @param kernel Kernel to sum each chunk with
+     */
+    static void residueSums(DataSet data, int from, int count, int period, double[] sums, SumKernel kernel) {
+        assert CHUNK % period == 0;
+        if (count <= 0) {
+            return;
+        }
+        double[] buffer = new double[Math.min(CHUNK, count)];
+        for (int start = 0; start < count; start += CHUNK) {
+            int len = Math.min(CHUNK, count - start);
+            data.copyRange(from + start, buffer, 0, len);
+            kernel.residueSums(buffer, len, period, sums);
+        }
+    }
+
+    /**
+     * Dot product of weights with every point of data.
+     * @param data DataSet to read
+     * @param weights Weights, one per point
+     * @return Dot product
+     */
+    static double dot(DataSet data, double[] weights) {
+        int count = data.numPoints();
+        assert weights.length == count;
+        double[] buffer = new double[Math.min(CHUNK, count)];
+        double sum = 0.0;
+        for (int start = 0; start < count; start += CHUNK) {
+            int len = Math.min(CHUNK, count - start);
+            data.copyRange(start, buffer, 0, len);
+            sum += KERNEL.dot(weights, start, buffer, len);
+        }
+        return sum;
+    }
+
+    private static SumKernel loadKernel() {
+        if (!Boolean.parseBoolean(System.getProperty(VECTORIZE_PROPERTY, "true"))) {
+            return SCALAR;
+        }
+        try {
+            Class<?> kernelClass = Class.forName("ultranewintegration.VectorSumKernel");
+            return (SumKernel) kernelClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            // Vector kernel not compiled, or jdk.incubator.vector not added at runtime.
+            return SCALAR;
+        }
+    }
+
+    /**
+     * Scalar array form of residueSums; offsets are taken relative to buffer[0].
+     * @param buffer Points
+     * @param len Number of points to use
+     * @param period 1, 2 or 4
+     * @param sums Accumulator of length at least period
+     */
+    static void residueSums(double[] buffer, int len, int period, double[] sums) {
+        switch (period) {
+            case 1: {
+                double s0 = 0;
+                for (int i = 0; i < len; i++) {
+                    s0 += buffer[i];
+                }
+                sums[0] += s0;
+                break;
+            }
+            case 2: {
+                double s0 = 0;
+                double s1 = 0;
+                int i = 0;
+                for (; i < len - 1; i += 2) {
+                    s0 += buffer[i];
+                    s1 += buffer[i + 1];
+                }
+                if (i < len) {
+                    s0 += buffer[i];
+                }
+                sums[0] += s0;
+                sums[1] += s1;
+                break;
+            }
+            case 4: {
+                double s0 = 0;
+                double s1 = 0;
+                double s2 = 0;
+                double s3 = 0;
+                int i = 0;
+                for (; i < len - 3; i += 4) {
+                    s0 += buffer[i];
+                    s1 += buffer[i + 1];
+                    s2 += buffer[i + 2];
+                    s3 += buffer[i + 3];
+                }
+                if (i < len) {
+                    s0 += buffer[i++];
+                }
+                if (i < len) {
+                    s1 += buffer[i++];
+                }
+                if (i < len) {
+                    s2 += buffer[i];
+                }
+                sums[0] += s0;
+                sums[1] += s1;
+                sums[2] += s2;
+                sums[3] += s3;
+                break;
+            }
+            default:
+                throw new IllegalArgumentException(String.format(" Unsupported period %d", period));
+        }
+    }
+
+    /**
+     * Scalar array form of dot.
+     * @param weights Weights
+     * @param offset First weight to use
+     * @param buffer Points
+     * @param len Number of points to use
+     * @return Dot product
+     */
+    static double dot(double[] weights, int offset, double[] buffer, int len) {
+        double s0 = 0;
+        double s1 = 0;
+        int i = 0;
+        for (; i < len - 1; i += 2) {
+            s0 += weights[offset + i] * buffer[i];
+            s1 += weights[offset + i + 1] * buffer[i + 1];
+        }
+        if (i < len) {
+            s0 += weights[offset + i] * buffer[i];
+        }
+        return s0 + s1;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Points of a lazily sampled FunctionDataCurve, evaluated on demand in tiles
+ * of TILE_SIZE points through the curve's bulk fX and held in an LRU cache
+ * of at most MAX_TILES tiles. Memory is bounded by the cache however many
+ * points the grid has, and only the tiles actually read are evaluated.
+ *
+ * Safe for concurrent readers: tiles are filled outside the lock and never
+ * change once cached, so a racing thread may at worst evaluate the same tile
+ * twice.
+ * @author Jacob M. Litman
+ */
+final class PointTiles {
+    /**
+     * Points per tile.
+     */
+    static final int TILE_SIZE = 8192;
+    /**
+     * Maximum cached tiles.
+     */
+    static final int MAX_TILES = 16;
+
+    private final FunctionDataCurve curve;
+    private final double lb;
+    private final double ub;
+    private final int nPoints;
+    private final boolean halfWidthEnds;
+    private final double sep;
+    private final Map<Integer, double[]> tiles;
+
+    /**
+     * Sets up (but does not evaluate) the points of curve over a grid of
+     * nPoints points from lb to ub.
+     * @param curve Curve to evaluate
+     * @param lb Lower bound
+     * @param ub Upper bound
+     * @param nPoints Number of points
+     * @param halfWidthEnds Whether the first and last bins are half-width
+     */
+    PointTiles(FunctionDataCurve curve, double lb, double ub, int nPoints, boolean halfWidthEnds) {
+        int minPoints = halfWidthEnds ? 3 : 2;
+        if (nPoints < minPoints) {
+            throw new IllegalArgumentException(String.format(" A lazily sampled curve needs at least %d points, not %d", minPoints, nPoints));
+        }
+        if (!(ub > lb)) {
+            throw new IllegalArgumentException(String.format(" Upper bound %f is not above lower bound %f", ub, lb));
+        }
+        this.curve = curve;
+        this.lb = lb;
+        this.ub = ub;
+        this.nPoints = nPoints;
+        this.halfWidthEnds = halfWidthEnds;
+        sep = (ub - lb) / (halfWidthEnds ? nPoints - 2 : nPoints - 1);
+        tiles = new LinkedHashMap<Integer, double[]>(2 * MAX_TILES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, double[]> eldest) {
+                return size() > MAX_TILES;
+            }
+        };
+    }
+
+    int numPoints() {
+        return nPoints;
+    }
+
+    /**
+     * x of the point at index, laid out as an eager curve's x array would be.
+     * @param index Point index
+     * @return x
+     */
+    double x(int index) {
+        if (index == 0) {
+            return lb;
+        }
+        if (index == nPoints - 1) {
+            return ub;
+        }
+        return halfWidthEnds ? lb + (0.5 * sep) + ((index - 1) * sep) : lb + (index * sep);
+    }
+
+    double get(int index) {
+        if (index < 0 || index >= nPoints) {
+            throw new IndexOutOfBoundsException(String.format(" Index %d outside [0, %d)", index, nPoints));
+        }
+        return tile(index / TILE_SIZE)[index % TILE_SIZE];
+    }
+
+    void copyRange(int index, double[] dest, int destPos, int length) {
+        if (index < 0 || length < 0 || index > nPoints - length) {
+            throw new IndexOutOfBoundsException(String.format(" Range of %d from %d outside [0, %d)", length, index, nPoints));
+        }
+        int end = index + length;
+        while (index < end) {
+            int t = index / TILE_SIZE;
+            int offset = index - (t * TILE_SIZE);
+            int len = Math.min(end - index, TILE_SIZE - offset);
+            System.arraycopy(tile(t), offset, dest, destPos, len);
+            index += len;
+            destPos += len;
+        }
+    }
+
+    private double[] tile(int t) {
+        double[] values;
+        synchronized (tiles) {
+            values = tiles.get(t);
+        }
+        if (values != null) {
+            return values;
+        }
+        int from = t * TILE_SIZE;
+        int len = Math.min(TILE_SIZE, nPoints - from);
+        double[] xs = new double[len];
+        for (int i = 0; i < len; i++) {
+            xs[i] = x(from + i);
+        }
+        values = new double[len];
+        curve.fX(xs, values);
+        synchronized (tiles) {
+            tiles.put(t, values);
+        }
+        return values;
+    }
+}
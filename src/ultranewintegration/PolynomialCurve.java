@@ -6,57 +6,215 @@
 package ultranewintegration;
 
 /**
- * A CubicCurve describes points along a polynomial function.
+ * A PolynomialCurve describes points along a polynomial function.
+ *
+ * Points are evaluated by Horner's rule, and the antiderivative's
+ * coefficients are computed once, so fX and integralAt cost O(degree). Bulk
+ * evaluation runs Horner's rule across points one coefficient at a time; on a
+ * uniform grid (fXUniform), low degrees instead step along the grid by finite
+ * differences, seeded exactly from a Taylor shift every RESEED points.
  * @author Jacob M. Litman
  */
 public class PolynomialCurve extends FunctionDataCurve {
+    /**
+     * Degrees evaluated in bulk by finite differences. Degree 1 is faster by
+     * Horner's rule, and above MAX_DIFFERENCE_DEGREE the O(degree^2) seeding
+     * of each run outweighs the savings.
+     */
+    static final int MIN_DIFFERENCE_DEGREE = 2;
+    static final int MAX_DIFFERENCE_DEGREE = 4;
+    /**
+     * Maximum points per finite-difference run between exact seeds.
+     */
+    static final int RESEED = 64;
+    /**
+     * Points per chunk of Horner's rule across points.
+     */
+    private static final int CHUNK = 2048;
+    /**
+     * SURJECTIONS[m][k] = k! S(m, k): the k-th forward difference of t^m at
+     * t = 0 with unit step.
+     */
+    private static final double[][] SURJECTIONS = new double[MAX_DIFFERENCE_DEGREE + 1][MAX_DIFFERENCE_DEGREE + 1];
+    
+    static {
+        SURJECTIONS[0][0] = 1.0;
+        for (int m = 1; m <= MAX_DIFFERENCE_DEGREE; m++) {
+            for (int k = 1; k <= m; k++) {
+                SURJECTIONS[m][k] = k * (SURJECTIONS[m - 1][k] + SURJECTIONS[m - 1][k - 1]);
+            }
+        }
+    }
     
     private final double[] coeff;
+    /**
+     * Antiderivative coefficients, antiderivative[i] multiplying x^i.
+     */
+    private final double[] antiderivative;
+    /**
+     * Index of the highest nonzero coefficient; -1 for the zero polynomial.
+     */
+    private final int degree;
 
     public PolynomialCurve(double[] x, double[] coefficients) {
         this(x, false, coefficients);
     }
     
     public PolynomialCurve(double[] x, boolean halfWidthEnds, double[] coefficients) {
+        this(coefficients);
         int npoints = x.length;
         points = new double[npoints];
-        coeff = new double[coefficients.length];
-        System.arraycopy(coefficients, 0, coeff, 0, coefficients.length);
         this.halfWidthEnd = halfWidthEnds;
         
-        for (int i = 0; i < points.length; i++) {
-            points[i] = fX(x[i]);
-        }
+        fX(x, points);
         lb = x[0];
         ub = x[npoints-1];
         assertXIntegrity(x);
     }
     
+    /**
+     * A lazily sampled polynomial over nPoints points from lb to ub; points
+     * are evaluated in tiles as they are read rather than up front.
+     * @param lb Lower bound
+     * @param ub Upper bound
+     * @param nPoints Number of points
+     * @param halfWidthEnds Whether the first and last bins are half-width
+     * @param coefficients Coefficients, coefficients[i] multiplying x^i
+     */
+    public PolynomialCurve(double lb, double ub, int nPoints, boolean halfWidthEnds, double[] coefficients) {
+        this(coefficients);
+        sampleLazily(lb, ub, nPoints, halfWidthEnds);
+    }
+    
+    private PolynomialCurve(double[] coefficients) {
+        coeff = new double[coefficients.length];
+        System.arraycopy(coefficients, 0, coeff, 0, coefficients.length);
+        
+        int d = coeff.length - 1;
+        while (d >= 0 && coeff[d] == 0.0) {
+            d--;
+        }
+        degree = d;
+        antiderivative = Polynomials.antiderivative(coeff);
+    }
+    
+    /**
+     * Coefficients, coefficients[i] multiplying x^i; shared, not copied.
+     */
+    double[] coefficients() {
+        return coeff;
+    }
+    
     @Override
     public double integralAt(double x) {
-        //double total = x * coeff[0];
-        double total = 0;
-        for (int i = 0; i < coeff.length; i++) {
-            double val = 1.0 / ((double) i+1);
-            val *= coeff[i];
-            for (int j = 0; j <= i; j++) {
-                val *= x;
-            }
-            total += val;
+        return Polynomials.horner(antiderivative, degree + 1, x);
+    }
+    
+    /**
+     * Exact integral from lb to ub, evaluating the antiderivative at both
+     * ends in one pass.
+     * @param lb Lower integration bound
+     * @param ub Upper integration bound
+     * @return Exact finite integral of range
+     */
+    @Override
+    public double anaylticalIntegral(double lb, double ub) {
+        double upper = 0.0;
+        double lower = 0.0;
+        for (int i = degree + 1; i >= 0; i--) {
+            double c = antiderivative[i];
+            upper = (upper * ub) + c;
+            lower = (lower * lb) + c;
         }
-        return total;
+        return upper - lower;
     }
     
     @Override
     public double fX(double x) {
-        double total = 0.0;
-        for (int i = 0; i < coeff.length; i++) {
-            double val = coeff[i];
-            for (int j = 0; j < i; j++) {
-                val *= x;
+        return Polynomials.horner(coeff, degree, x);
+    }
+    
+    /**
+     * Evaluates the polynomial over xs by Horner's rule across points, one
+     * coefficient at a time over cache-sized chunks.
+     * @param xs x values
+     * @param out f(xs[i]); length at least xs.length
+     */
+    @Override
+    public void fX(double[] xs, double[] out) {
+        int n = xs.length;
+        checkOutputLength(out, n);
+        for (int from = 0; from < n; from += CHUNK) {
+            Polynomials.horner(coeff, degree, xs, from, out, from, Math.min(CHUNK, n - from));
+        }
+    }
+    
+    /**
+     * Evaluates the polynomial over a uniform grid, out[i] = f(x0 + i * step)
+     * for every i in out. Degrees MIN_DIFFERENCE_DEGREE to
+     * MAX_DIFFERENCE_DEGREE step along the grid by finite differences, seeded
+     * exactly every RESEED points; other degrees use Horner's rule.
+     * @param x0 First x
+     * @param step Grid spacing
+     * @param out Output
+     */
+    public void fXUniform(double x0, double step, double[] out) {
+        int n = out.length;
+        if (degree < MIN_DIFFERENCE_DEGREE || degree > MAX_DIFFERENCE_DEGREE) {
+            double[] xs = new double[Math.min(n, CHUNK)];
+            for (int from = 0; from < n; from += CHUNK) {
+                int len = Math.min(CHUNK, n - from);
+                for (int i = 0; i < len; i++) {
+                    xs[i] = x0 + ((from + i) * step);
+                }
+                Polynomials.horner(coeff, degree, xs, 0, out, from, len);
+            }
+            return;
+        }
+        double[] taylor = new double[degree + 1];
+        double[] differences = new double[degree + 1];
+        for (int s = 0; s < n; s += RESEED) {
+            int e = Math.min(n, s + RESEED);
+            seed(x0 + (s * step), step, taylor, differences);
+            // Differences above the degree are zero.
+            double d0 = differences[0];
+            double d1 = differences[1];
+            double d2 = differences[2];
+            double d3 = (degree > 2) ? differences[3] : 0.0;
+            double d4 = (degree > 3) ? differences[4] : 0.0;
+            for (int i = s; i < e; i++) {
+                out[i] = d0;
+                d0 += d1;
+                d1 += d2;
+                d2 += d3;
+                d3 += d4;
+            }
+        }
+    }
+    
+    /**
+     * Forward differences of p(x0 + t * step) at t = 0, from its Taylor
+     * coefficients rather than by subtracting values, so the high-order
+     * differences carry no cancellation error.
+     */
+    private void seed(double x0, double step, double[] taylor, double[] differences) {
+        System.arraycopy(coeff, 0, taylor, 0, degree + 1);
+        for (int i = 0; i < degree; i++) {
+            for (int k = degree - 1; k >= i; k--) {
+                taylor[k] += x0 * taylor[k + 1];
+            }
+        }
+        double power = 1.0;
+        for (int m = 0; m <= degree; m++) {
+            taylor[m] *= power;
+            power *= step;
+        }
+        for (int k = 0; k <= degree; k++) {
+            double sum = 0.0;
+            for (int m = degree; m >= k; m--) {
+                sum += taylor[m] * SURJECTIONS[m][k];
             }
-            total += val;
+            differences[k] = sum;
         }
-        return total;
     }
 }
@@ -0,0 +1,69 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+/**
+ * Polynomial arithmetic shared by PolynomialCurve and CompositeCurve, with
+ * coefficients[k] multiplying x^k.
+ * @author Jacob M. Litman
+ */
+final class Polynomials {
+
+    private Polynomials() {
+    }
+
+    /**
+     * Coefficients of the antiderivative that is 0 at x = 0.
+     * @param coefficients Coefficients, coefficients[k] multiplying x^k
+     * @return Antiderivative coefficients, one longer
+     */
+    static double[] antiderivative(double[] coefficients) {
+        double[] integral = new double[coefficients.length + 1];
+        for (int k = 0; k < coefficients.length; k++) {
+            integral[k + 1] = coefficients[k] / (k + 1);
+        }
+        return integral;
+    }
+
+    /**
+     * Horner's rule at x over coefficients[0, degree].
+     * @param coefficients Coefficients
+     * @param degree Highest coefficient to use; -1 for the zero polynomial
+     * @param x x
+     * @return p(x)
+     */
+    static double horner(double[] coefficients, int degree, double x) {
+        double val = 0.0;
+        for (int k = degree; k >= 0; k--) {
+            val = (val * x) + coefficients[k];
+        }
+        return val;
+    }
+
+    /**
+     * Horner's rule across xs[xsFrom, xsFrom + len), one coefficient at a
+     * time, into out[outFrom, outFrom + len).
+     * @param coefficients Coefficients
+     * @param degree Highest coefficient to use; -1 for the zero polynomial
+     * @param xs x values
+     * @param xsFrom First x
+     * @param out Output
+     * @param outFrom First output
+     * @param len Number of points
+     */
+    static void horner(double[] coefficients, int degree, double[] xs, int xsFrom, double[] out, int outFrom, int len) {
+        double top = (degree >= 0) ? coefficients[degree] : 0.0;
+        for (int i = 0; i < len; i++) {
+            out[outFrom + i] = top;
+        }
+        for (int k = degree - 1; k >= 0; k--) {
+            double c = coefficients[k];
+            for (int i = 0; i < len; i++) {
+                out[outFrom + i] = (out[outFrom + i] * xs[xsFrom + i]) + c;
+            }
+        }
+    }
+}
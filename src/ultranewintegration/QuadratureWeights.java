@@ -0,0 +1,148 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import ultranewintegration.UltraNewIntegration.IntegrationSide;
+import ultranewintegration.UltraNewIntegration.IntegrationType;
+
+/**
+ * Per-point quadrature weights: for a grid of a given size and end layout,
+ * integrating by a rule is binWidth times the dot product of these weights
+ * with the points. Half-width end bins, rule alignment and leftover bins are
+ * all folded into the weights.
+ *
+ * Weight vectors are kept in a least-recently-used cache keyed by
+ * (numPoints, type, side, halfWidthEnds), so workloads that reuse a few grid
+ * shapes compute each layout once. The cache is bounded by the doubles it
+ * holds rather than by its number of entries, evicting the least recently
+ * used vectors once it holds more than MAX_CACHED_DOUBLES.
+ * @author Jacob M. Litman
+ */
+final class QuadratureWeights {
+    /**
+     * Maximum doubles held by the cache (32 MB). Larger vectors are computed
+     * on every call rather than cached.
+     */
+    static final int MAX_CACHED_DOUBLES = 1 << 22;
+    /**
+     * Doubles charged per entry on top of its weights, for the key, map entry
+     * and array header, so that many tiny vectors are bounded too.
+     */
+    static final int ENTRY_OVERHEAD = 16;
+
+    private static final Map<Key, double[]> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Doubles charged to the entries of CACHE; guarded by CACHE.
+     */
+    private static long cachedDoubles = 0;
+
+    private QuadratureWeights() {
+    }
+
+    /**
+     * Weight vector for a grid shape, from the cache where possible. The
+     * returned array is shared and must not be modified.
+     * @param nPoints Number of points
+     * @param type Integration rule
+     * @param side Side to align the rule to
+     * @param halfWidthEnds Whether the end bins are half-width
+     * @return Weights, in units of the bin width
+     */
+    static double[] get(int nPoints, IntegrationType type, IntegrationSide side, boolean halfWidthEnds) {
+        if (nPoints + ENTRY_OVERHEAD > MAX_CACHED_DOUBLES) {
+            return compute(nPoints, type, side, halfWidthEnds);
+        }
+        Key key = new Key(nPoints, type, side, halfWidthEnds);
+        double[] weights;
+        synchronized (CACHE) {
+            weights = CACHE.get(key);
+        }
+        if (weights == null) {
+            // Computed outside the lock; a racing thread computes the same vector.
+            weights = compute(nPoints, type, side, halfWidthEnds);
+            synchronized (CACHE) {
+                double[] previous = CACHE.put(key, weights);
+                if (previous != null) {
+                    cachedDoubles -= previous.length + ENTRY_OVERHEAD;
+                }
+                cachedDoubles += weights.length + ENTRY_OVERHEAD;
+                Iterator<double[]> eldest = CACHE.values().iterator();
+                while (cachedDoubles > MAX_CACHED_DOUBLES) {
+                    cachedDoubles -= eldest.next().length + ENTRY_OVERHEAD;
+                    eldest.remove();
+                }
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Computes the weight vector matching UltraNewIntegration.integrate.
+     * @param nPoints Number of points
+     * @param type Integration rule
+     * @param side Side to align the rule to
+     * @param halfWidthEnds Whether the end bins are half-width
+     * @return Weights, in units of the bin width
+     */
+    static double[] compute(int nPoints, IntegrationType type, IntegrationSide side, boolean halfWidthEnds) {
+        double[] weights = new double[nPoints];
+        int lb = 0;
+        int ub = nPoints - 1;
+        if (halfWidthEnds) {
+            if (type == IntegrationType.RECTANGULAR) {
+                // As rectangularEnds.
+                int offset = (side == IntegrationSide.RIGHT) ? 1 : 0;
+                weights[offset] += 0.5;
+                weights[nPoints - 2 + offset] += 0.5;
+            } else {
+                // As trapezoidalEnds.
+                weights[0] += 0.25;
+                weights[1] += 0.25;
+                weights[nPoints - 2] += 0.25;
+                weights[nPoints - 1] += 0.25;
+            }
+            lb++;
+            ub--;
+        }
+        ResidueRules.addWeights(type, side, lb, ub, weights);
+        return weights;
+    }
+
+    private static final class Key {
+        private final int nPoints;
+        private final IntegrationType type;
+        private final IntegrationSide side;
+        private final boolean halfWidthEnds;
+
+        Key(int nPoints, IntegrationType type, IntegrationSide side, boolean halfWidthEnds) {
+            this.nPoints = nPoints;
+            this.type = type;
+            this.side = side;
+            this.halfWidthEnds = halfWidthEnds;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return nPoints == other.nPoints && type == other.type
+                    && side == other.side && halfWidthEnds == other.halfWidthEnds;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = nPoints;
+            hash = (31 * hash) + type.ordinal();
+            hash = (31 * hash) + side.ordinal();
+            return (2 * hash) + (halfWidthEnds ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+import ultranewintegration.UltraNewIntegration.IntegrationSide;
+import ultranewintegration.UltraNewIntegration.IntegrationType;
+
+/**
+ * Evaluates the integration rules of UltraNewIntegration from sums of points
+ * split by index modulo 4, plus the few points at either end. Every rule's
+ * weights repeat with a period dividing 4, so one set of these sums serves all
+ * rules and both sides, and can be kept up to date incrementally.
+ * @author Jacob M. Litman
+ */
+final class ResidueRules {
+    private static final double ONE_THIRD = (1.0 / 3.0);
+    private static final double THREE_EIGHTHS = (3.0 / 8.0);
+    private static final double TWO_FORTYFIFTHS = (2.0 / 45.0);
+    /**
+     * Interior weights by offset (modulo 4) from the start of the main block.
+     */
+    private static final double[] TRAPEZOIDAL_WEIGHTS = {1, 1, 1, 1};
+    private static final double[] SIMPSONS_WEIGHTS = {2, 4, 2, 4};
+    private static final double[] BOOLE_WEIGHTS = {14, 32, 12, 32};
+    /**
+     * Weights of the leftover-bin rules for 1, 2 and 3 bins.
+     */
+    private static final double[][] REMAINDER_WEIGHTS = {
+        {0.5, 0.5},
+        {ONE_THIRD, 4 * ONE_THIRD, ONE_THIRD},
+        {THREE_EIGHTHS, 3 * THREE_EIGHTHS, 3 * THREE_EIGHTHS, THREE_EIGHTHS}
+    };
+
+    private ResidueRules() {
+    }
+
+    /**
+     * Area from lb to ub in units of the bin width, matching the DataSet range
+     * integrators of UltraNewIntegration (up to rounding).
+     * @param type Integration rule
+     * @param side Side to align the rule to
+     * @param lb Lower index
+     * @param ub Upper index
+     * @param sums sums[r] is the sum of points i in [lb, ub] with (i - lb) % 4 == r
+     * @param point Point accessor; only called within 4 points of lb or ub
+     * @return Area divided by bin width
+     */
+    static double area(IntegrationType type, IntegrationSide side, int lb, int ub, double[] sums, IntToDoubleFunction point) {
+        int span = ub - lb;
+        if (span <= 0) {
+            return 0.0;
+        }
+        double total = sums[0] + sums[1] + sums[2] + sums[3];
+        double[] weights;
+        double endWeight;
+        double scale;
+        int period;
+        switch (type) {
+            case RECTANGULAR:
+                return (side == IntegrationSide.RIGHT) ? total - point.applyAsDouble(lb) : total - point.applyAsDouble(ub);
+            case SIMPSONS:
+                weights = SIMPSONS_WEIGHTS;
+                endWeight = 1;
+                scale = ONE_THIRD;
+                period = 2;
+                break;
+            case BOOLE:
+                weights = BOOLE_WEIGHTS;
+                endWeight = 7;
+                scale = TWO_FORTYFIFTHS;
+                period = 4;
+                break;
+            case TRAPEZOIDAL:
+            default:
+                weights = TRAPEZOIDAL_WEIGHTS;
+                endWeight = 0.5;
+                scale = 1.0;
+                period = 1;
+                break;
+        }
+
+        int nBins = span / period;
+        int remainder = span % period;
+        int start = (side == IntegrationSide.RIGHT) ? lb + remainder : lb;
+        int end = start + (period * nBins);
+        int neglected = (side == IntegrationSide.RIGHT) ? lb : end;
+
+        double area = 0.0;
+        if (nBins > 0) {
+            // Strip the points outside the open interval (start, end).
+            double[] interior = Arrays.copyOf(sums, 4);
+            for (int i = lb; i <= start; i++) {
+                interior[(i - lb) & 3] -= point.applyAsDouble(i);
+            }
+            for (int i = end; i <= ub; i++) {
+                interior[(i - lb) & 3] -= point.applyAsDouble(i);
+            }
+            int shift = start - lb;
+            for (int r = 0; r < 4; r++) {
+                area += weights[(r - shift) & 3] * interior[r];
+            }
+            area += endWeight * (point.applyAsDouble(start) + point.applyAsDouble(end));
+            area *= scale;
+        }
+        return area + remainder(remainder, neglected, point);
+    }
+
+    /**
+     * Adds each point's weight in the rule from lb to ub, in units of the bin
+     * width, so that the area is the dot product of weights and points.
+     * @param type Integration rule
+     * @param side Side to align the rule to
+     * @param lb Lower index
+     * @param ub Upper index
+     * @param weights Weights to add to, indexed by point
+     */
+    static void addWeights(IntegrationType type, IntegrationSide side, int lb, int ub, double[] weights) {
+        int span = ub - lb;
+        if (span <= 0) {
+            return;
+        }
+        double[] interior;
+        double endWeight;
+        double scale;
+        int period;
+        switch (type) {
+            case RECTANGULAR:
+                int first = (side == IntegrationSide.RIGHT) ? lb + 1 : lb;
+                for (int i = first; i < first + span; i++) {
+                    weights[i] += 1.0;
+                }
+                return;
+            case SIMPSONS:
+                interior = SIMPSONS_WEIGHTS;
+                endWeight = 1;
+                scale = ONE_THIRD;
+                period = 2;
+                break;
+            case BOOLE:
+                interior = BOOLE_WEIGHTS;
+                endWeight = 7;
+                scale = TWO_FORTYFIFTHS;
+                period = 4;
+                break;
+            case TRAPEZOIDAL:
+            default:
+                interior = TRAPEZOIDAL_WEIGHTS;
+                endWeight = 0.5;
+                scale = 1.0;
+                period = 1;
+                break;
+        }
+
+        int nBins = span / period;
+        int remainder = span % period;
+        int start = (side == IntegrationSide.RIGHT) ? lb + remainder : lb;
+        int end = start + (period * nBins);
+        int neglected = (side == IntegrationSide.RIGHT) ? lb : end;
+
+        if (nBins > 0) {
+            weights[start] += scale * endWeight;
+            weights[end] += scale * endWeight;
+            for (int i = start + 1; i < end; i++) {
+                weights[i] += scale * interior[(i - start) & 3];
+            }
+        }
+        if (remainder > 0) {
+            double[] rule = REMAINDER_WEIGHTS[remainder - 1];
+            for (int i = 0; i <= remainder; i++) {
+                weights[neglected + i] += rule[i];
+            }
+        }
+    }
+
+    /**
+     * Area of the 1-3 bins left over after the main rule, in units of the bin
+     * width: trapezoidal rule for 1, Simpson's rule for 2, Simpson's 3/8 rule
+     * for 3.
+     * @param remainder Number of leftover bins
+     * @param lb First index of the leftover bins
+     * @param point Point accessor
+     * @return Area divided by bin width
+     */
+    static double remainder(int remainder, int lb, IntToDoubleFunction point) {
+        switch (remainder) {
+            case 0:
+                return 0.0;
+            case 1:
+                return 0.5 * (point.applyAsDouble(lb) + point.applyAsDouble(lb + 1));
+            case 2:
+                return ONE_THIRD * (point.applyAsDouble(lb) + (4*point.applyAsDouble(lb + 1)) + point.applyAsDouble(lb + 2));
+            case 3:
+                return THREE_EIGHTHS * (point.applyAsDouble(lb) + (3*point.applyAsDouble(lb + 1))
+                        + (3*point.applyAsDouble(lb + 2)) + point.applyAsDouble(lb + 3));
+            default:
+                throw new IllegalArgumentException(String.format(" Invalid remainder %d", remainder));
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+/**
+ * Romberg integration of an existing DataSet: trapezoidal sums over the points
+ * at strides 2^K, ..., 4, 2, 1, extrapolated to higher order. Nothing is
+ * resampled or copied; each stride reads only the points the coarser strides
+ * have not, coarsest first, so stopping early at a tolerance skips reading the
+ * finer points altogether.
+ *
+ * Grids of any size are split into a leading piece of a multiple of 2^K bins,
+ * integrated by Romberg's method, followed by the leftover bins, which are
+ * split the same way with fewer levels. A final 1-3 bins are integrated by the
+ * quartic through the last five points, as are grids of under 4 bins by the
+ * trapezoidal, Simpson's or Simpson's 3/8 rule. Each piece is given a share of
+ * the tolerance in proportion to its length. Half-width end bins are
+ * integrated by the cubic through the four points nearest each end.
+ * @author Jacob M. Litman
+ */
+public final class RombergIntegration {
+    /**
+     * Maximum number of halvings of the coarsest stride.
+     */
+    public static final int MAX_LEVELS = 10;
+    /**
+     * Rows of the Romberg table required before testing convergence, so that
+     * a lucky early agreement is not taken for convergence.
+     */
+    private static final int MIN_ROWS = 3;
+    /**
+     * Weights of the cubic through points at 0, 1, 3 and 5 half-bins,
+     * integrated over the first half-bin, in units of the half-bin.
+     */
+    private static final double[] END_WEIGHTS = {5.0 / 12.0, 61.0 / 96.0, -1.0 / 16.0, 1.0 / 96.0};
+
+    private RombergIntegration() {
+    }
+
+    /**
+     * Integrates a DataSet with no early stopping.
+     * @param data DataSet to integrate
+     * @return Result
+     */
+    public static Result integrate(DataSet data) {
+        return integrate(data, 0.0);
+    }
+
+    /**
+     * Integrates a DataSet, stopping once the estimated error of each piece
+     * is within its share of tolerance.
+     * @param data DataSet to integrate
+     * @param tolerance Absolute error tolerance; 0 to use every point
+     * @return Result
+     */
+    public static Result integrate(DataSet data, double tolerance) {
+        if (tolerance < 0) {
+            throw new IllegalArgumentException(String.format(" Negative tolerance %g", tolerance));
+        }
+        int lb = 0;
+        int ub = data.numPoints() - 1;
+        Result result = new Result();
+        if (data.halfWidthEnds()) {
+            lb++;
+            ub--;
+            int n = data.numPoints();
+            if (n >= 5) {
+                // Points 0-3 lie 0, 1, 3 and 5 half-bins from either end.
+                double halfWidth = 0.5 * data.binWidth();
+                for (int i = 0; i < 4; i++) {
+                    result.area += halfWidth * END_WEIGHTS[i] * (data.getPoint(i) + data.getPoint(n - 1 - i));
+                }
+                result.pointsRead += 8;
+            } else {
+                result.area += UltraNewIntegration.trapezoidalEnds(data, UltraNewIntegration.IntegrationSide.LEFT);
+                result.pointsRead += 4;
+            }
+        }
+        int bins = ub - lb;
+        if (bins < 4) {
+            // Too few bins to extrapolate or estimate an error.
+            result.area += ResidueRules.remainder(bins, lb, data::getPoint) * data.binWidth();
+            result.pointsRead += bins + 1;
+            result.converged = false;
+            return result;
+        }
+        double share = tolerance / bins;
+        while (bins >= 4) {
+            int piece = piece(data, lb, bins, share, result);
+            lb += piece;
+            bins -= piece;
+        }
+        if (bins > 0) {
+            // Quartic through points ub - 4 to ub, over the last bins.
+            double[] full = CumulativeIntegration.PARTIAL[3][3];
+            double[] head = CumulativeIntegration.PARTIAL[3][3 - bins];
+            double area = 0.0;
+            for (int i = 0; i < 5; i++) {
+                area += (full[i] - head[i]) * data.getPoint(ub - 4 + i);
+            }
+            result.area += area * data.binWidth();
+            result.pointsRead += bins;
+        }
+        return result;
+    }
+
+    /**
+     * Integrates the leading piece of at least 4 bins from lb into result.
+     * @return Number of bins integrated
+     */
+    private static int piece(DataSet data, int lb, int bins, double share, Result result) {
+        double width = data.binWidth();
+        int levels = Math.min(MAX_LEVELS, 31 - Integer.numberOfLeadingZeros(bins));
+        int coarse = 1 << levels;
+        int length = (bins >>> levels) << levels;
+        int ub = lb + length;
+        double tolerance = share * length;
+
+        // Coarsest trapezoid, then halve the stride down to 1.
+        double sum = 0.5 * (data.getPoint(lb) + data.getPoint(ub));
+        for (int i = lb + coarse; i < ub; i += coarse) {
+            sum += data.getPoint(i);
+        }
+        result.pointsRead += (length / coarse) + 1;
+        double[] previous = new double[levels + 1];
+        double[] row = new double[levels + 1];
+        row[0] = sum * coarse * width;
+        double estimate = Double.POSITIVE_INFINITY;
+        int rows = 1;
+        for (int stride = coarse >>> 1; stride >= 1; stride >>>= 1) {
+            double[] swap = previous;
+            previous = row;
+            row = swap;
+            double midpoints = 0.0;
+            for (int i = lb + stride; i < ub; i += 2 * stride) {
+                midpoints += data.getPoint(i);
+            }
+            result.pointsRead += length / (2 * stride);
+            row[0] = (0.5 * previous[0]) + (midpoints * stride * width);
+            double factor = 1.0;
+            for (int j = 1; j <= rows; j++) {
+                factor *= 4.0;
+                row[j] = row[j - 1] + ((row[j - 1] - previous[j - 1]) / (factor - 1.0));
+            }
+            estimate = Math.abs(row[rows] - previous[rows - 1]);
+            ++rows;
+            if (tolerance > 0 && rows >= MIN_ROWS && estimate <= tolerance) {
+                break;
+            }
+        }
+        result.area += row[rows - 1];
+        result.errorEstimate += estimate;
+        result.levels = Math.max(result.levels, rows - 1);
+        result.converged &= (estimate <= tolerance);
+        return length;
+    }
+
+    /**
+     * Result of a Romberg integration.
+     */
+    public static final class Result {
+        private double area = 0.0;
+        private double errorEstimate = 0.0;
+        private long pointsRead = 0;
+        private int levels = 0;
+        private boolean converged = true;
+
+        private Result() {
+        }
+
+        public double getArea() {
+            return area;
+        }
+
+        /**
+         * Sum over pieces of the difference between the last two diagonal
+         * entries of each Romberg table.
+         * @return Error estimate
+         */
+        public double getErrorEstimate() {
+            return errorEstimate;
+        }
+
+        /**
+         * Number of point reads; less than numPoints() when stopped early.
+         * @return Points read
+         */
+        public long getPointsRead() {
+            return pointsRead;
+        }
+
+        /**
+         * Most stride halvings used by any piece.
+         * @return Levels
+         */
+        public int getLevels() {
+            return levels;
+        }
+
+        /**
+         * Whether every piece met its share of the tolerance.
+         * @return Converged
+         */
+        public boolean isConverged() {
+            return converged;
+        }
+    }
+}
@@ -27,14 +27,43 @@ public class SinWave extends FunctionDataCurve {
         jinv = 1.0 / j;
         this.halfWidthEnd = halfWidthEnds;
         
-        for (int i = 0; i < points.length; i++) {
-            points[i] = fX(x[i]);
-        }
+        fX(x, points);
         lb = x[0];
         ub = x[npoints-1];
         assertXIntegrity(x);
     }
     
+    /**
+     * A lazily sampled sine wave over nPoints points from lb to ub; points are
+     * evaluated in tiles as they are read rather than up front.
+     * @param lb Lower bound
+     * @param ub Upper bound
+     * @param nPoints Number of points
+     * @param halfWidthEnds Whether the first and last bins are half-width
+     * @param a Amplitude
+     * @param j Angular frequency
+     */
+    public SinWave(double lb, double ub, int nPoints, boolean halfWidthEnds, double a, double j) {
+        this.a = a;
+        this.j = j;
+        jinv = 1.0 / j;
+        sampleLazily(lb, ub, nPoints, halfWidthEnds);
+    }
+    
+    /**
+     * Amplitude a.
+     */
+    double amplitude() {
+        return a;
+    }
+    
+    /**
+     * Angular frequency j.
+     */
+    double frequency() {
+        return j;
+    }
+    
     @Override
     public double integralAt(double x) {
         return -1 * a * jinv * Math.cos(j*x);
@@ -44,4 +73,14 @@ public class SinWave extends FunctionDataCurve {
     public double fX(double x) {
         return a*Math.sin(j*x);
     }
+    
+    /**
+     * Evaluates the wave over xs, by recurrence along equally spaced runs.
+     * @param xs x values
+     * @param out f(xs[i]); length at least xs.length
+     */
+    @Override
+    public void fX(double[] xs, double[] out) {
+        TrigRecurrence.sin(xs, out, a, j);
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+import ultranewintegration.UltraNewIntegration.IntegrationSide;
+import ultranewintegration.UltraNewIntegration.IntegrationType;
+
+/**
+ * Integrates points on a uniform grid as they arrive. Points are kept only as
+ * compensated sums split by index modulo 4, plus the first and last four
+ * points, so each append is O(1) and the running integral can be read at any
+ * time in O(1). The integral always agrees, up to rounding, with integrating a
+ * DataSet of every point seen so far by the same rule and side (without
+ * half-width ends), including the rule-alignment leftovers.
+ * @author Jacob M. Litman
+ */
+public class StreamingIntegrator {
+    private final IntegrationType type;
+    private final IntegrationSide side;
+    private final double lb;
+    private final double sep;
+    private final double[] sums = new double[4];
+    private final double[] compensation = new double[4];
+    private final double[] first = new double[4];
+    private final double[] last = new double[4];
+    private int nX = 0;
+
+    public StreamingIntegrator(IntegrationType type, double lowerBound, double binWidth) {
+        this(type, IntegrationSide.LEFT, lowerBound, binWidth);
+    }
+
+    public StreamingIntegrator(IntegrationType type, IntegrationSide side, double lowerBound, double binWidth) {
+        assert binWidth > 0;
+        this.type = type;
+        this.side = side;
+        this.lb = lowerBound;
+        this.sep = binWidth;
+    }
+
+    /**
+     * Appends the next point.
+     * @param point f(x) at the next grid point
+     */
+    public void add(double point) {
+        int r = nX & 3;
+        // Kahan summation keeps long runs from drifting.
+        double y = point - compensation[r];
+        double t = sums[r] + y;
+        compensation[r] = (t - sums[r]) - y;
+        sums[r] = t;
+        if (nX < 4) {
+            first[nX] = point;
+        }
+        last[r] = point;
+        ++nX;
+    }
+
+    /**
+     * Appends a chunk of points.
+     * @param points Points
+     * @param offset First point to append
+     * @param length Number of points to append
+     */
+    public void add(double[] points, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            add(points[i]);
+        }
+    }
+
+    /**
+     * Integral over every point appended so far.
+     * @return Area
+     */
+    public double integral() {
+        if (nX < 2) {
+            return 0.0;
+        }
+        return ResidueRules.area(type, side, 0, nX - 1, sums, this::point) * sep;
+    }
+
+    /**
+     * Point at index; only the first and last four points are retained.
+     * @param index Index
+     * @return Point
+     */
+    private double point(int index) {
+        if (index >= nX - 4) {
+            return last[index & 3];
+        }
+        assert index < 4;
+        return first[index];
+    }
+
+    public int numPoints() {
+        return nX;
+    }
+
+    public double lowerBound() {
+        return lb;
+    }
+
+    /**
+     * x of the most recently appended point.
+     * @return Upper bound
+     */
+    public double upperBound() {
+        return lb + (Math.max(0, nX - 1) * sep);
+    }
+
+    public double binWidth() {
+        return sep;
+    }
+
+    public IntegrationType getType() {
+        return type;
+    }
+
+    public IntegrationSide getSide() {
+        return side;
+    }
+}
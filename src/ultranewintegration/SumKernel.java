@@ -0,0 +1,37 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+/**
+ * Array kernels underlying the integrators, so that they can be swapped for
+ * SIMD implementations at runtime.
+ * @author Jacob M. Litman
+ */
+@FunctionalInterface
+interface SumKernel {
+    /**
+     * Sums the first len entries of buffer split by index modulo period:
+     * sums[r] accumulates every buffer[i] where i % period == r.
+     * @param buffer Points
+     * @param len Number of points to use
+     * @param period 1, 2 or 4
+     * @param sums Accumulator of length at least period
+     */
+    public abstract void residueSums(double[] buffer, int len, int period, double[] sums);
+
+    /**
+     * Dot product of len entries of weights, starting at offset, with the
+     * first len entries of buffer.
+     * @param weights Weights
+     * @param offset First weight to use
+     * @param buffer Points
+     * @param len Number of points to use
+     * @return Dot product
+     */
+    public default double dot(double[] weights, int offset, double[] buffer, int len) {
+        return PointSums.dot(weights, offset, buffer, len);
+    }
+}
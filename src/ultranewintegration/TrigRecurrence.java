@@ -0,0 +1,159 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+/**
+ * Bulk evaluation of a*sin(jx) or a*cos(jx) over runs of equally spaced x.
+ * Each run of at most RESEED points is seeded with exact sin and cos at its
+ * first point, and every later point is the seed rotated by k steps through
+ * the angle-addition formulas, using a table of sin(k theta) and cos(k theta)
+ * shared by all runs with the same step. The table is built by the stable
+ * rotation c -= (alpha c + beta s), s -= (alpha s - beta c), with alpha =
+ * 2 sin^2(theta/2) and beta = sin(theta). Points within a run do not depend
+ * on each other, so the loop vectorizes; the seeds bound rounding error to a
+ * few ulp of a, about as accurate as Math.sin at the same x.
+ *
+ * Runs follow the spacing of x (see UniformRuns): half-width end bins, or any
+ * point that breaks the spacing, are evaluated directly.
+ * @author Jacob M. Litman
+ */
+final class TrigRecurrence {
+    /**
+     * Maximum points per run between exact seeds.
+     */
+    static final int RESEED = 64;
+    /**
+     * Table entries between exact values.
+     */
+    private static final int SEED_STRIDE = 16;
+    /**
+     * Shorter runs are evaluated directly.
+     */
+    private static final int MIN_RUN = 4;
+
+    private TrigRecurrence() {
+    }
+
+    /**
+     * Evaluates amplitude * sin(frequency * xs[i]) into out[i].
+     * @param xs x values
+     * @param out Output, length at least xs.length
+     * @param amplitude a
+     * @param frequency j
+     */
+    static void sin(double[] xs, double[] out, double amplitude, double frequency) {
+        evaluate(xs, 0, xs.length, out, amplitude, frequency, false);
+    }
+
+    /**
+     * Evaluates amplitude * sin(frequency * xs[i]) into out[i - from], for i
+     * from from to to.
+     * @param xs x values
+     * @param from First index
+     * @param to Index after the last
+     * @param out Output, length at least to - from
+     * @param amplitude a
+     * @param frequency j
+     */
+    static void sin(double[] xs, int from, int to, double[] out, double amplitude, double frequency) {
+        evaluate(xs, from, to, out, amplitude, frequency, false);
+    }
+
+    /**
+     * Evaluates amplitude * cos(frequency * xs[i]) into out[i].
+     * @param xs x values
+     * @param out Output, length at least xs.length
+     * @param amplitude a
+     * @param frequency j
+     */
+    static void cos(double[] xs, double[] out, double amplitude, double frequency) {
+        evaluate(xs, 0, xs.length, out, amplitude, frequency, true);
+    }
+
+    /**
+     * Evaluates amplitude * cos(frequency * xs[i]) into out[i - from], for i
+     * from from to to.
+     * @param xs x values
+     * @param from First index
+     * @param to Index after the last
+     * @param out Output, length at least to - from
+     * @param amplitude a
+     * @param frequency j
+     */
+    static void cos(double[] xs, int from, int to, double[] out, double amplitude, double frequency) {
+        evaluate(xs, from, to, out, amplitude, frequency, true);
+    }
+
+    private static void evaluate(double[] xs, int from, int to, double[] out, double amplitude, double frequency, boolean cosine) {
+        FunctionDataCurve.checkOutputLength(out, to - from);
+        double[] sinTable = new double[RESEED];
+        double[] cosTable = new double[RESEED];
+        double tableStep = Double.NaN;
+        int s = from;
+        while (s < to) {
+            int e = UniformRuns.end(xs, s, to, RESEED);
+            if (e - s < MIN_RUN) {
+                out[s - from] = direct(xs[s], amplitude, frequency, cosine);
+                s++;
+                continue;
+            }
+            double step = (xs[e - 1] - xs[s]) / (e - 1 - s);
+            double tolerance = UniformRuns.tolerance(xs, s, e);
+            if (!UniformRuns.onGrid(xs, s, e, step, tolerance)) {
+                for (int k = s; k < e; k++) {
+                    out[k - from] = direct(xs[k], amplitude, frequency, cosine);
+                }
+                s = e;
+                continue;
+            }
+            // Reuse the table while its step puts every point within tolerance.
+            if (!(Math.abs(step - tableStep) * (e - 1 - s) <= tolerance)) {
+                tableStep = step;
+                buildTable(frequency * step, sinTable, cosTable);
+            }
+            double angle = frequency * xs[s];
+            double sn = amplitude * Math.sin(angle);
+            double cs = amplitude * Math.cos(angle);
+            if (cosine) {
+                for (int k = s; k < e; k++) {
+                    out[k - from] = (cs * cosTable[k - s]) - (sn * sinTable[k - s]);
+                }
+            } else {
+                for (int k = s; k < e; k++) {
+                    out[k - from] = (sn * cosTable[k - s]) + (cs * sinTable[k - s]);
+                }
+            }
+            s = e;
+        }
+    }
+
+    /**
+     * Fills sin(k theta) and cos(k theta) by rotation, re-seeding from exact
+     * values every SEED_STRIDE entries.
+     */
+    private static void buildTable(double theta, double[] sinTable, double[] cosTable) {
+        double half = Math.sin(0.5 * theta);
+        double alpha = 2.0 * half * half;
+        double beta = Math.sin(theta);
+        for (int k = 0; k < sinTable.length; k++) {
+            double sn;
+            double cs;
+            if (k % SEED_STRIDE == 0) {
+                sn = Math.sin(k * theta);
+                cs = Math.cos(k * theta);
+            } else {
+                sn = sinTable[k - 1] - ((alpha * sinTable[k - 1]) - (beta * cosTable[k - 1]));
+                cs = cosTable[k - 1] - ((alpha * cosTable[k - 1]) + (beta * sinTable[k - 1]));
+            }
+            sinTable[k] = sn;
+            cosTable[k] = cs;
+        }
+    }
+
+    private static double direct(double x, double amplitude, double frequency, boolean cosine) {
+        return amplitude * (cosine ? Math.cos(frequency * x) : Math.sin(frequency * x));
+    }
+}
@@ -52,6 +52,7 @@ public class UltraNewIntegration {
     private final static double[] x = new double[201];
     private static final double DEFAULT_WIDTH = 0.005;
     private static final double ONE_THIRD = (1.0 / 3.0);
+    private static final double TWO_FORTYFIFTHS = (2.0 / 45.0);
 
     static {
         /*x[0] = 0;
@@ -240,6 +241,64 @@ public class UltraNewIntegration {
         return halfBinComposite;
     }
     
+    /**
+     * Integrates an entire DataSet with the given rule, including any
+     * half-width end bins.
+     * @param data DataSet to integrate
+     * @param type Integration rule
+     * @param side Side to align the rule to
+     * @return Area
+     */
+    public static double integrate(DataSet data, IntegrationType type, IntegrationSide side) {
+        return integrate(data, type, side, PointSums::residueSums);
+    }
+    
+    /**
+     * Integrates an entire DataSet as the dot product of its points with a
+     * cached weight vector for its grid shape. Gives the same result as
+     * integrate up to rounding; faster when a few grid shapes are integrated
+     * many times, at the cost of reading one weight per point.
+     * @param data DataSet to integrate
+     * @param type Integration rule
+     * @param side Side to align the rule to
+     * @return Area
+     */
+    public static double integrateWeighted(DataSet data, IntegrationType type, IntegrationSide side) {
+        double[] weights = QuadratureWeights.get(data.numPoints(), type, side, data.halfWidthEnds());
+        return PointSums.dot(data, weights) * data.binWidth();
+    }
+    
+    /**
+     * Integrates an entire DataSet, reading the bulk of the points through
+     * summer; end and remainder corrections are applied once, here.
+     */
+    static double integrate(DataSet data, IntegrationType type, IntegrationSide side, ResidueSummer summer) {
+        double area = 0;
+        int lb = 0;
+        int ub = data.numPoints() - 1;
+        if (data.halfWidthEnds()) {
+            area = (type == IntegrationType.RECTANGULAR) ? rectangularEnds(data, side) : trapezoidalEnds(data, side);
+            lb++;
+            ub--;
+        }
+        switch (type) {
+            case RECTANGULAR:
+                area += rectangular(data, side, lb, ub, summer);
+                break;
+            case SIMPSONS:
+                area += simpsons(data, side, lb, ub, summer);
+                break;
+            case BOOLE:
+                area += boole(data, side, lb, ub, summer);
+                break;
+            case TRAPEZOIDAL:
+            default:
+                area += trapezoidal(data, side, lb, ub, summer);
+                break;
+        }
+        return area;
+    }
+    
     public static double trapezoidal(DataSet data, IntegrationSide side) {
         double area = 0;
         int lb = 0;
@@ -254,16 +313,18 @@ public class UltraNewIntegration {
     }
     
     public static double trapezoidal(DataSet data, IntegrationSide side, int lb, int ub) {
+        return trapezoidal(data, side, lb, ub, PointSums::residueSums);
+    }
+    
+    static double trapezoidal(DataSet data, IntegrationSide side, int lb, int ub, ResidueSummer summer) {
         double area = 0;
-        int nPoints = data.numPoints();
         double width = data.binWidth();
-        double[] points = data.getAllPoints();
+        double[] sums = new double[1];
         
-        area = 0.5 * points[lb];
-        area += 0.5 * points[ub];
-        for (int i = lb + 1; i < ub; i++) {
-            area += points[i];
-        }
+        area = 0.5 * data.getPoint(lb);
+        area += 0.5 * data.getPoint(ub);
+        summer.residueSums(data, lb + 1, ub - lb - 1, 1, sums);
+        area += sums[0];
         area *= width;
         return area;
     }
@@ -346,32 +407,38 @@ public class UltraNewIntegration {
     }
 
     public static double simpsons(DataSet data, IntegrationSide side, int lb, int ub) {
+        return simpsons(data, side, lb, ub, PointSums::residueSums);
+    }
+    
+    static double simpsons(DataSet data, IntegrationSide side, int lb, int ub, ResidueSummer summer) {
         double area = 0;
-        int nPoints = data.numPoints();
         double width = data.binWidth();
-        double[] points = data.getAllPoints();
         
         int nBins = (ub - lb) / 2;
         int lowerNeglected;
         int upperNeglected;
+        int start;
         
         switch (side) {
             case RIGHT:
-                for (int i = ub; i > (lb + 1); i -= 2) {
-                    area += points[i] + (4*points[i-1]) + points[i-2];
-                }
+                start = ub - (2*nBins);
                 lowerNeglected = lb;
                 upperNeglected = ub - (2*nBins);
                 break;
             case LEFT:
             default:
-                for (int i = lb; i < (ub-1); i+= 2) {
-                    area += points[i] + (4*points[i+1]) + points[i+2];
-                }
+                start = lb;
                 lowerNeglected = lb + (2*nBins);
                 upperNeglected = ub;
                 break;
         }
+        if (nBins > 0) {
+            // Weights 1, 4, 2, 4, ..., 2, 4, 1 from start to start + 2*nBins.
+            double[] sums = new double[2];
+            summer.residueSums(data, start + 1, (2*nBins) - 1, 2, sums);
+            area = data.getPoint(start) + data.getPoint(start + (2*nBins));
+            area += (4*sums[0]) + (2*sums[1]);
+        }
         area *= ONE_THIRD;
         area *= width;
         
@@ -379,6 +446,68 @@ public class UltraNewIntegration {
         return area;
     }
     
+    public static double boole(DataSet data, IntegrationSide side) {
+        double area = 0;
+        int lb = 0;
+        int ub = data.numPoints() - 1;
+        if (data.halfWidthEnds()) {
+            area = trapezoidalEnds(data, side);
+            lb++;
+            ub--;
+        }
+        area += boole(data, side, lb, ub);
+        return area;
+    }
+    
+    /**
+     * Integrates from lb to ub with Boole's rule in a single sweep. Quads are
+     * aligned to lb (LEFT) or ub (RIGHT); the 1-3 bins left over at the other
+     * end are integrated with the trapezoidal rule, Simpson's rule or Simpson's
+     * 3/8 rule respectively.
+     * @param data DataSet to integrate
+     * @param side Side to align quads to
+     * @param lb Lower index
+     * @param ub Upper index
+     * @return Area
+     */
+    public static double boole(DataSet data, IntegrationSide side, int lb, int ub) {
+        return boole(data, side, lb, ub, PointSums::residueSums);
+    }
+    
+    static double boole(DataSet data, IntegrationSide side, int lb, int ub, ResidueSummer summer) {
+        double width = data.binWidth();
+        
+        int nBins = (ub - lb) / 4;
+        int remainder = (ub - lb) % 4;
+        int start;
+        int neglected;
+        
+        switch (side) {
+            case RIGHT:
+                start = lb + remainder;
+                neglected = lb;
+                break;
+            case LEFT:
+            default:
+                start = lb;
+                neglected = lb + (4*nBins);
+                break;
+        }
+        
+        double area = 0;
+        if (nBins > 0) {
+            // Weights 7, 32, 12, 32, 14, 32, ..., 14, 32, 12, 32, 7.
+            double[] sums = new double[4];
+            summer.residueSums(data, start + 1, (4*nBins) - 1, 4, sums);
+            area = 7 * (data.getPoint(start) + data.getPoint(start + (4*nBins)));
+            area += (32 * (sums[0] + sums[2])) + (12 * sums[1]) + (14 * sums[3]);
+            area *= TWO_FORTYFIFTHS;
+        }
+        
+        area += ResidueRules.remainder(remainder, neglected, data::getPoint);
+        return area * width;
+    }
+    
     private static double finishIntegration(DataSet data, IntegrationSide side, int lb, int ub, IntegrationType type) {
         double width = data.binWidth();
         int totPoints = (ub - lb);
@@ -398,8 +527,10 @@ public class UltraNewIntegration {
             case RECTANGULAR:
                 intMode = UltraNewIntegration::rectangular;
                 break;
+            case BOOLE:
+                intMode = UltraNewIntegration::boole;
+                break;
             case TRAPEZOIDAL:
-            case BOOLE: // Temporary assignment
             default:
                 intMode = UltraNewIntegration::trapezoidal;
                 break;
@@ -618,26 +749,25 @@ public class UltraNewIntegration {
     }
     
     public static double rectangular(DataSet data, IntegrationSide side, int lb, int ub) {
-        double area = 0;
+        return rectangular(data, side, lb, ub, PointSums::residueSums);
+    }
+    
+    static double rectangular(DataSet data, IntegrationSide side, int lb, int ub, ResidueSummer summer) {
         double width = data.binWidth();
-        double[] points = data.getAllPoints();
+        double[] sums = new double[1];
         assert ub > lb;
-        assert ub < points.length;
+        assert ub < data.numPoints();
         
         switch (side) {
             case RIGHT:
-                for (int i = ub; i > lb; i--) {
-                    area += (width * points[i]);
-                }
+                summer.residueSums(data, lb + 1, ub - lb, 1, sums);
                 break;
             case LEFT:
             default:
-                for (int i = lb; i < ub; i++) {
-                    area += width * points[i];
-                }
+                summer.residueSums(data, lb, ub - lb, 1, sums);
                 break;
         }
-        return area;
+        return sums[0] * width;
     }
     
     public static double rectangularEnds(DataSet data, IntegrationSide side) {
@@ -713,4 +843,13 @@ public class UltraNewIntegration {
     private static interface IntegrateWindow {
         public abstract double toArea(DataSet data, IntegrationSide side, int lb, int ub);
     }
+    
+    /**
+     * Accumulates sums of points split by offset modulo period; see
+     * PointSums.residueSums.
+     */
+    @FunctionalInterface
+    static interface ResidueSummer {
+        public abstract void residueSums(DataSet data, int from, int count, int period, double[] sums);
+    }
 }
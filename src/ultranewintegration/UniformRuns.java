@@ -0,0 +1,73 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ultranewintegration;
+
+/**
+ * Finds runs of equally spaced x, for bulk evaluators that step along a
+ * uniform grid (such as TrigRecurrence) rather than evaluating each point
+ * from scratch. A run ends at any point that breaks the spacing, such
+ * as a half-width end bin.
+ * @author Jacob M. Litman
+ */
+final class UniformRuns {
+
+    private UniformRuns() {
+    }
+
+    /**
+     * End of the run from s whose spacings match the first one.
+     * @param xs x values
+     * @param s First index
+     * @param to Index after the last to consider
+     * @param maxLength Maximum points in the run
+     * @return Index after the run's last point; s + 1 if there is no run
+     */
+    static int end(double[] xs, int s, int to, int maxLength) {
+        int limit = Math.min(to, s + maxLength);
+        if (s + 1 >= limit) {
+            return s + 1;
+        }
+        double first = xs[s + 1] - xs[s];
+        if (!(first > 0.0) || Double.isInfinite(first)) {
+            return s + 1;
+        }
+        double tolerance = 1.0E-6 * first;
+        int e = s + 2;
+        while (e < limit && Math.abs((xs[e] - xs[e - 1]) - first) <= tolerance) {
+            e++;
+        }
+        return e;
+    }
+
+    /**
+     * Tolerance for onGrid: a few ulp of the run's largest x.
+     * @param xs x values
+     * @param s First index
+     * @param e Index after the last
+     * @return Tolerance
+     */
+    static double tolerance(double[] xs, int s, int e) {
+        return 4.0 * Math.ulp(Math.max(Math.abs(xs[s]), Math.abs(xs[e - 1])));
+    }
+
+    /**
+     * Whether every point of [s, e) is within tolerance of xs[s] + k * step.
+     * @param xs x values
+     * @param s First index
+     * @param e Index after the last
+     * @param step Spacing
+     * @param tolerance Tolerance
+     * @return Whether the run is on the grid
+     */
+    static boolean onGrid(double[] xs, int s, int e, double step, double tolerance) {
+        for (int k = s + 1; k < e - 1; k++) {
+            if (Math.abs(xs[k] - (xs[s] + ((k - s) * step))) > tolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
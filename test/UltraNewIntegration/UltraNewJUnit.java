@@ -5,12 +5,25 @@
  */
 package UltraNewIntegration;
 
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import static ultranewintegration.UltraNewIntegration.HalfBinComposite;
 import static ultranewintegration.UltraNewIntegration.generateTestData_v1;
@@ -32,6 +45,26 @@ import ultranewintegration.PolynomialCurve;
 import ultranewintegration.SinWave;
 import ultranewintegration.CosineWave;
 import ultranewintegration.CompositeCurve;
+import ultranewintegration.BatchIntegration;
+import ultranewintegration.BinningBuilder;
+import ultranewintegration.ConcurrentHistogram;
+import ultranewintegration.CumulativeIntegration;
+import ultranewintegration.DataSet;
+import ultranewintegration.DoublesDataSet;
+import ultranewintegration.FFT;
+import ultranewintegration.GaussKronrodIntegration;
+import ultranewintegration.GridDataSet2D;
+import ultranewintegration.GridIntegration;
+import ultranewintegration.IntegralIndex;
+import ultranewintegration.IntegrationCache;
+import ultranewintegration.MappedDataSet;
+import ultranewintegration.MultiRuleIntegral;
+import ultranewintegration.MutableDataSet;
+import ultranewintegration.NonUniformDataSet;
+import ultranewintegration.NonUniformIntegration;
+import ultranewintegration.ParallelIntegration;
+import ultranewintegration.RombergIntegration;
+import ultranewintegration.StreamingIntegrator;
 
 /**
  * The IntegrationTest is a JUnit test for the Integration program that ensures
@@ -163,12 +196,16 @@ public class UltraNewJUnit {
             double sLeft = UltraNewIntegration.simpsons(pn, LEFT);
             double sRight = UltraNewIntegration.simpsons(pn, RIGHT);
             
+            double bLeft = UltraNewIntegration.boole(pn, LEFT);
+            double bRight = UltraNewIntegration.boole(pn, RIGHT);
+            
             System.out.println(String.format(" Integrals for polynomial of degree %d", i));
             System.out.println(String.format(" %-18s %9.3g  %-18s %9.3g", "Exact", trueVal, "Analytical", analytical));
             System.out.println(" Numerical integration errors:");
             System.out.println(String.format(" %-18s %9.3g  %-18s %9.3g", "Left rectangular", rLeft - trueVal, "Right rectangular", rRight - trueVal));
             System.out.println(String.format(" %-18s %9.3g  %-18s %9.3g", "Left trapezoidal", tLeft - trueVal, "Right trapezoidal", tRight - trueVal));
             System.out.println(String.format(" %-18s %9.3g  %-18s %9.3g", "Left Simpson's", sLeft - trueVal, "Right Simpson's", sRight - trueVal));
+            System.out.println(String.format(" %-18s %9.3g  %-18s %9.3g", "Left Boole's", bLeft - trueVal, "Right Boole's", bRight - trueVal));
             
             if (i == 0) {
                 assertToUlp(trueVal, 500.0, rLeft, rRight);
@@ -176,12 +213,1211 @@ public class UltraNewJUnit {
             if (i <= 1) {
                 assertToUlp(trueVal, 500.0, tLeft, tRight);
             }
-            // Insert code to assert for Simpson's and Boole's.
-            // Simpson's should be exact up to order 2, Boole's exact up to order 4.
+            // Simpson's is exact up to order 3, Boole's exact up to order 5.
+            if (i <= 3) {
+                assertToUlp(trueVal, 500.0, sLeft, sRight);
+            }
+            assertToUlp(trueVal, 500.0, bLeft, bRight);
             System.out.println();
         }
     }
     
+    @Test
+    public void booleRemainderTest() {
+        // Grids with 0-3 bins left over after the Boole's quads; the leftover
+        // rules (trapezoidal, Simpson's, Simpson's 3/8) keep cubics exact.
+        double[] cubic = {2.0, -1.0, -3.0, 1.0};
+        for (int nPoints = 41; nPoints <= 44; nPoints++) {
+            double[] points = grid(0.0, 1.0, nPoints, false);
+            PolynomialCurve pn = new PolynomialCurve(points, false, cubic);
+            double trueVal = pn.analyticalIntegral();
+            if ((nPoints - 1) % 4 == 1) {
+                // One bin is left to the trapezoidal rule, which is inexact.
+                assertEquals(trueVal, UltraNewIntegration.boole(pn, LEFT), 1.0E-3);
+                assertEquals(trueVal, UltraNewIntegration.boole(pn, RIGHT), 1.0E-3);
+            } else {
+                assertToUlp(trueVal, 500.0, UltraNewIntegration.boole(pn, LEFT), UltraNewIntegration.boole(pn, RIGHT));
+            }
+        }
+    }
+    
+    @Test
+    public void parallelDeterminismTest() {
+        int nPoints = 300003; // Several fork/join leaves, with a remainder.
+        ForkJoinPool[] pools = {new ForkJoinPool(1), new ForkJoinPool(2), new ForkJoinPool(3), new ForkJoinPool(8)};
+        try {
+            for (boolean halfWidth : new boolean[]{false, true}) {
+                double[] points = grid(0.0, 1.0, nPoints, halfWidth);
+                FunctionDataCurve curve = new SinWave(points, halfWidth, 10, 6);
+                for (IntegrationType type : IntegrationType.values()) {
+                    for (IntegrationSide side : IntegrationSide.values()) {
+                        double serial = UltraNewIntegration.integrate(curve, type, side);
+                        double reference = ParallelIntegration.integrate(curve, type, side, pools[0]);
+                        assertEquals(serial, reference, 1.0E-12);
+                        for (int p = 1; p < pools.length; p++) {
+                            double parallel = ParallelIntegration.integrate(curve, type, side, pools[p]);
+                            assertEquals(Double.doubleToLongBits(reference), Double.doubleToLongBits(parallel));
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (ForkJoinPool pool : pools) {
+                pool.shutdown();
+            }
+        }
+    }
+    
+    @Test
+    public void kernelAccuracyTest() {
+        // Whichever summation kernel is active (scalar, or SIMD when
+        // jdk.incubator.vector is available) should match a compensated
+        // scalar sum of each rule's weights to near machine precision.
+        int nPoints = 100001;
+        double[] points = grid(0.0, 1.0, nPoints, false);
+        FunctionDataCurve pn = new PolynomialCurve(points, false, new double[]{1.0, 0.5, 2.0});
+        double[][] weights = {{1}, {1}, {2, 4}, {14, 32, 12, 32}};
+        double[] ends = {0.5, 0.5, 1, 7};
+        double[] scale = {1.0, 1.0, 1.0 / 3.0, 2.0 / 45.0};
+        IntegrationType[] types = {IntegrationType.RECTANGULAR, IntegrationType.TRAPEZOIDAL,
+            IntegrationType.SIMPSONS, IntegrationType.BOOLE};
+        for (int t = 0; t < types.length; t++) {
+            double sum = ends[t] * (pn.getPoint(0) + pn.getPoint(nPoints - 1));
+            if (types[t] == IntegrationType.RECTANGULAR) {
+                sum = pn.getPoint(0);
+            }
+            double comp = 0;
+            for (int i = 1; i < nPoints - 1; i++) {
+                double y = (weights[t][i % weights[t].length] * pn.getPoint(i)) - comp;
+                double next = sum + y;
+                comp = (next - sum) - y;
+                sum = next;
+            }
+            double reference = sum * scale[t] * pn.binWidth();
+            double val = UltraNewIntegration.integrate(pn, types[t], LEFT);
+            assertEquals(reference, val, 1.0E-13 * Math.abs(reference));
+        }
+    }
+    
+    /**
+     * The Vector API kernel matches the scalar kernel to a few ulps, for
+     * residue sums and dot products whose lengths are not multiples of the
+     * lane count or of PointSums' chunk. Run whenever the test JVM has the
+     * jdk.incubator.vector module; the kernels are package-private, so they
+     * are reached by reflection.
+     */
+    @Test
+    public void vectorKernelTest() throws ReflectiveOperationException {
+        Assume.assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent());
+        Class<?> kernelType = Class.forName("ultranewintegration.SumKernel");
+        Method residueSums = kernelType.getMethod("residueSums", double[].class, int.class, int.class, double[].class);
+        Method dot = kernelType.getMethod("dot", double[].class, int.class, double[].class, int.class);
+        residueSums.setAccessible(true);
+        dot.setAccessible(true);
+        Class<?> pointSums = Class.forName("ultranewintegration.PointSums");
+        Field scalarField = pointSums.getDeclaredField("SCALAR");
+        Field chunkField = pointSums.getDeclaredField("CHUNK");
+        scalarField.setAccessible(true);
+        chunkField.setAccessible(true);
+        Object scalar = scalarField.get(null);
+        int chunk = chunkField.getInt(null);
+        Constructor<?> vectorConstructor = Class.forName("ultranewintegration.VectorSumKernel").getDeclaredConstructor();
+        vectorConstructor.setAccessible(true);
+        Object vector = vectorConstructor.newInstance();
+        
+        Random random = new Random(5);
+        int offset = 3;
+        for (int len : new int[]{1, 3, 7, 9, 15, 17, 31, 33, 1023, 1025, 3001, 4099}) {
+            double[] points = new double[len];
+            double[] weights = new double[len + offset];
+            for (int i = 0; i < len; i++) {
+                points[i] = random.nextDouble() - 0.3;
+            }
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = random.nextDouble();
+            }
+            for (int period : new int[]{1, 2, 4}) {
+                double[] expected = new double[period];
+                double[] actual = new double[period];
+                double[] magnitude = new double[period];
+                double expectedDot = 0.0;
+                double actualDot = 0.0;
+                double dotMagnitude = 0.0;
+                // Chunked as PointSums reads a DataSet.
+                for (int start = 0; start < len; start += chunk) {
+                    int n = Math.min(chunk, len - start);
+                    double[] buffer = Arrays.copyOfRange(points, start, start + n);
+                    residueSums.invoke(scalar, buffer, n, period, expected);
+                    residueSums.invoke(vector, buffer, n, period, actual);
+                    expectedDot += (Double) dot.invoke(scalar, weights, offset + start, buffer, n);
+                    actualDot += (Double) dot.invoke(vector, weights, offset + start, buffer, n);
+                }
+                for (int i = 0; i < len; i++) {
+                    magnitude[i % period] += Math.abs(points[i]);
+                    dotMagnitude += Math.abs(weights[offset + i] * points[i]);
+                }
+                for (int r = 0; r < period; r++) {
+                    assertEquals(expected[r], actual[r], 8.0 * Math.ulp(magnitude[r]));
+                }
+                assertEquals(expectedDot, actualDot, 8.0 * Math.ulp(dotMagnitude));
+            }
+        }
+    }
+    
+    @Test
+    public void mappedDataSetTest() throws IOException {
+        int nPoints = 5003;
+        double[] points = grid(0.0, 1.0, nPoints, true);
+        FunctionDataCurve curve = new SinWave(points, true, 10, 6);
+        
+        Path file = Files.createTempFile("mapped", ".dat");
+        try {
+            MappedDataSet.write(file, curve);
+            // Small windows, so that reads span several mappings.
+            try (MappedDataSet mapped = MappedDataSet.open(file, 1024)) {
+                assertEquals(curve.numPoints(), mapped.numPoints());
+                assertEquals(curve.lowerBound(), mapped.lowerBound(), 0.0);
+                assertEquals(curve.upperBound(), mapped.upperBound(), 0.0);
+                assertEquals(curve.binWidth(), mapped.binWidth(), 0.0);
+                assertTrue(mapped.halfWidthEnds());
+                for (int i = 0; i < nPoints; i++) {
+                    assertEquals(curve.getPoint(i), mapped.getPoint(i), 0.0);
+                }
+                for (IntegrationType type : IntegrationType.values()) {
+                    for (IntegrationSide side : IntegrationSide.values()) {
+                        assertEquals(UltraNewIntegration.integrate(curve, type, side),
+                                UltraNewIntegration.integrate(mapped, type, side), 0.0);
+                    }
+                }
+            }
+            
+            // A half-width header with only 2 points has no interior bin.
+            ByteBuffer header = ByteBuffer.allocate(MappedDataSet.HEADER_BYTES + 16).order(ByteOrder.LITTLE_ENDIAN);
+            header.putDouble(0.0).putDouble(1.0).putLong(2L).putInt(1);
+            Files.write(file, header.array());
+            boolean rejected = false;
+            try (MappedDataSet mapped = MappedDataSet.open(file)) {
+                mapped.numPoints();
+            } catch (IOException ex) {
+                rejected = true;
+            }
+            assertTrue(rejected);
+        } finally {
+            Files.delete(file);
+        }
+    }
+    
+    @Test
+    public void streamingIntegratorTest() {
+        // After every append, the running integral should match a batch
+        // integration of the points so far, including alignment leftovers.
+        int maxPoints = 60;
+        double sep = 0.05;
+        double[] xs = new double[maxPoints];
+        double[] ys = new double[maxPoints];
+        for (int i = 0; i < maxPoints; i++) {
+            xs[i] = 1.0 + (i * sep);
+            ys[i] = 10 * Math.sin(6 * xs[i]) - 7 * Math.cos(5 * xs[i]);
+        }
+        for (IntegrationType type : IntegrationType.values()) {
+            for (IntegrationSide side : IntegrationSide.values()) {
+                StreamingIntegrator stream = new StreamingIntegrator(type, side, xs[0], sep);
+                stream.add(ys, 0, 1);
+                for (int n = 2; n <= maxPoints; n++) {
+                    if (n % 7 == 0 && n + 2 <= maxPoints) {
+                        // Exercise chunked appends.
+                        stream.add(ys, n - 1, 3);
+                        n += 2;
+                    } else {
+                        stream.add(ys[n - 1]);
+                    }
+                    DoublesDataSet batch = new DoublesDataSet(Arrays.copyOf(xs, n), Arrays.copyOf(ys, n));
+                    assertEquals(n, stream.numPoints());
+                    assertEquals(UltraNewIntegration.integrate(batch, type, side), stream.integral(), 1.0E-12);
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void cumulativeIntegralTest() {
+        for (int nPoints : new int[]{202, 203, 204, 205}) {
+            for (boolean halfWidth : new boolean[]{false, true}) {
+                double[] points = grid(0.0, 1.0, nPoints, halfWidth);
+                FunctionDataCurve curve = new SinWave(points, halfWidth, 10, 6);
+                double[] out = new double[nPoints];
+                for (IntegrationType type : IntegrationType.values()) {
+                    for (IntegrationSide side : IntegrationSide.values()) {
+                        CumulativeIntegration.cumulativeIntegral(curve, type, side, out);
+                        assertEquals(UltraNewIntegration.integrate(curve, type, side), out[nPoints - 1], 1.0E-12);
+                        if (!halfWidth && (type == IntegrationType.SIMPSONS || type == IntegrationType.BOOLE)
+                                && ((nPoints - 1) % (type.binsNeeded() - 1) != 1)) {
+                            // Every index, aligned or not, is accurate to the rule's order
+                            // (unless a single leftover bin falls to the trapezoidal rule).
+                            for (int k = 1; k < nPoints; k++) {
+                                double exact = curve.anaylticalIntegral(points[0], points[k]);
+                                assertEquals(exact, out[k], 1.0E-6);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void parallelCumulativeIntegralTest() {
+        int nPoints = 300003;
+        double[] points = grid(0.0, 1.0, nPoints, false);
+        FunctionDataCurve curve = new SinWave(points, false, 10, 6);
+        double[] serial = new double[nPoints];
+        double[] reference = new double[nPoints];
+        double[] parallel = new double[nPoints];
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (IntegrationType type : IntegrationType.values()) {
+                for (IntegrationSide side : IntegrationSide.values()) {
+                    CumulativeIntegration.cumulativeIntegral(curve, type, side, serial);
+                    CumulativeIntegration.cumulativeIntegral(curve, type, side, reference, single);
+                    CumulativeIntegration.cumulativeIntegral(curve, type, side, parallel, pool);
+                    for (int k = 0; k < nPoints; k++) {
+                        assertEquals(serial[k], reference[k], 1.0E-12);
+                        assertEquals(Double.doubleToLongBits(reference[k]), Double.doubleToLongBits(parallel[k]));
+                    }
+                }
+            }
+        } finally {
+            single.shutdown();
+            pool.shutdown();
+        }
+    }
+    
+    @Test
+    public void integralIndexTest() {
+        for (boolean halfWidth : new boolean[]{false, true}) {
+            int nPoints = 202;
+            double[] points = grid(0.0, 1.0, nPoints, halfWidth);
+            FunctionDataCurve curve = new SinWave(points, halfWidth, 10, 6);
+            IntegralIndex index = new IntegralIndex(curve);
+            
+            for (IntegrationType type : new IntegrationType[]{IntegrationType.RECTANGULAR,
+                IntegrationType.TRAPEZOIDAL, IntegrationType.SIMPSONS}) {
+                // The full range matches the direct integrators.
+                assertEquals(UltraNewIntegration.integrate(curve, type, LEFT), index.integrate(0.0, 1.0, type), 1.0E-12);
+                // Grid-aligned ranges are prefix differences.
+                double[] cumulative = new double[nPoints];
+                CumulativeIntegration.cumulativeIntegral(curve, type, LEFT, cumulative);
+                assertEquals(cumulative[150] - cumulative[17], index.integrate(points[17], points[150], type), 1.0E-12);
+                // Partial bins are continuous across grid points.
+                double eps = 1.0E-12;
+                assertEquals(index.integrate(0.0, points[61], type), index.integrate(0.0, points[61] - eps, type), 1.0E-10);
+                assertEquals(index.integrate(0.0, points[62], type), index.integrate(0.0, points[62] + eps, type), 1.0E-10);
+            }
+            
+            double[][] ranges = {{0.0013, 0.7771}, {0.25, 0.2513}, {0.9, 0.1}, {0.001, 0.999}};
+            for (double[] range : ranges) {
+                double exact = curve.anaylticalIntegral(range[0], range[1]);
+                assertEquals(exact, index.integrate(range[0], range[1], IntegrationType.TRAPEZOIDAL), 1.0E-3);
+                assertEquals(exact, index.integrate(range[0], range[1], IntegrationType.SIMPSONS), 1.0E-5);
+            }
+        }
+    }
+    
+    /**
+     * Concurrent writers lose no additions, and every snapshot holds a prefix
+     * of each writer's additions while they run.
+     */
+    @Test
+    public void concurrentHistogramTest() throws InterruptedException {
+        int nWriters = 4;
+        int nAdds = 200000;
+        ConcurrentHistogram histogram = new ConcurrentHistogram(0.0, 1.0, (2 * nWriters) + 1, false, 8);
+        Thread[] writers = new Thread[nWriters];
+        for (int w = 0; w < nWriters; w++) {
+            int first = 2 * w;
+            writers[w] = new Thread(() -> {
+                for (int i = 0; i < nAdds; i++) {
+                    histogram.add(first, 1.0);
+                    histogram.add(first + 1, 1.0);
+                }
+            });
+            writers[w].start();
+        }
+        boolean running = true;
+        while (running) {
+            DoublesDataSet snapshot = histogram.snapshot();
+            for (int w = 0; w < nWriters; w++) {
+                double lead = snapshot.getPoint(2 * w) - snapshot.getPoint((2 * w) + 1);
+                assertTrue(lead == 0.0 || lead == 1.0);
+            }
+            running = false;
+            for (Thread writer : writers) {
+                running |= writer.isAlive();
+            }
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        DoublesDataSet last = histogram.snapshot();
+        for (int i = 0; i < 2 * nWriters; i++) {
+            assertEquals(nAdds, last.getPoint(i), 0.0);
+            assertEquals(nAdds, histogram.getPoint(i), 0.0);
+        }
+        assertEquals(2.0 * nWriters * nAdds * last.binWidth(),
+                UltraNewIntegration.integrate(last, IntegrationType.RECTANGULAR, LEFT), 1.0E-6);
+        
+        // Samples map to the nearest point, including half-width ends; stray samples are dropped.
+        ConcurrentHistogram halfWidth = new ConcurrentHistogram(0.0, 1.0, 12, true);
+        assertTrue(halfWidth.addSample(0.02, 1.0));
+        assertTrue(halfWidth.addSample(0.06, 2.0));
+        assertTrue(halfWidth.addSample(0.5, 3.0));
+        assertTrue(halfWidth.addSample(0.99, 4.0));
+        assertTrue(!halfWidth.addSample(-0.01, 5.0));
+        assertTrue(!halfWidth.addSample(1.01, 5.0));
+        assertTrue(!halfWidth.addSample(Double.NaN, 5.0));
+        DoublesDataSet counts = halfWidth.snapshot();
+        assertEquals(1.0, counts.getPoint(0), 0.0);
+        assertEquals(2.0, counts.getPoint(1), 0.0);
+        assertEquals(3.0, counts.getPoint(6), 0.0);
+        assertEquals(4.0, counts.getPoint(11), 0.0);
+        assertEquals(10.0, Arrays.stream(counts.getAllPoints()).sum(), 0.0);
+    }
+    
+    /**
+     * Parallel binning matches binning sample by sample, in every mode and
+     * regardless of the pool, and drops samples outside the bounds.
+     */
+    @Test
+    public void binningBuilderTest() {
+        int nSamples = 300001;
+        double[] x = new double[nSamples];
+        double[] values = new double[nSamples];
+        Random random = new Random(7);
+        for (int k = 0; k < nSamples; k++) {
+            x[k] = (1.1 * random.nextDouble()) - 0.05;
+            values[k] = random.nextGaussian();
+        }
+        
+        // Brute-force nearest point on the half-width grid.
+        int nPoints = 42;
+        double[] grid = grid(0.0, 1.0, nPoints, true);
+        double[] sums = new double[nPoints];
+        double[] counts = new double[nPoints];
+        for (int k = 0; k < nSamples; k++) {
+            if (x[k] < 0.0 || x[k] > 1.0) {
+                continue;
+            }
+            int nearest = 0;
+            for (int i = 1; i < nPoints; i++) {
+                if (Math.abs(x[k] - grid[i]) < Math.abs(x[k] - grid[nearest])) {
+                    nearest = i;
+                }
+            }
+            sums[nearest] += values[k];
+            counts[nearest]++;
+        }
+        
+        BinningBuilder builder = new BinningBuilder(0.0, 1.0, nPoints, true);
+        DoublesDataSet sequential = builder.build(x, values);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        DoublesDataSet parallel;
+        try {
+            parallel = builder.pool(pool).build(x, values);
+        } finally {
+            pool.shutdown();
+        }
+        DoublesDataSet common = builder.pool(ForkJoinPool.commonPool()).build(x, values);
+        DoublesDataSet binCounts = builder.mode(BinningBuilder.Mode.COUNT).build(x, null);
+        DoublesDataSet means = builder.mode(BinningBuilder.Mode.MEAN).build(x, values);
+        assertEquals(nPoints, sequential.numPoints());
+        assertTrue(sequential.halfWidthEnds());
+        assertEquals(1.0 / (nPoints - 2), sequential.binWidth(), 1.0E-15);
+        double total = 0.0;
+        for (int i = 0; i < nPoints; i++) {
+            assertEquals(sums[i], sequential.getPoint(i), 1.0E-9);
+            assertEquals(sequential.getPoint(i), parallel.getPoint(i), 0.0);
+            assertEquals(sequential.getPoint(i), common.getPoint(i), 0.0);
+            assertEquals(counts[i], binCounts.getPoint(i), 0.0);
+            assertEquals(sequential.getPoint(i) / counts[i], means.getPoint(i), 1.0E-12);
+            total += counts[i];
+        }
+        assertTrue(total < nSamples);
+        assertEquals(UltraNewIntegration.integrate(sequential, IntegrationType.SIMPSONS, LEFT),
+                UltraNewIntegration.integrate(parallel, IntegrationType.SIMPSONS, LEFT), 0.0);
+    }
+    
+    /**
+     * Live integrals of a mutable data set follow point updates and match
+     * integrating it from scratch.
+     */
+    @Test
+    public void mutableDataSetTest() {
+        int nPoints = 203;
+        double[] points = new double[nPoints];
+        for (int i = 0; i < nPoints; i++) {
+            points[i] = Math.sin(0.05 * i);
+        }
+        MutableDataSet data = MutableDataSet.wrap(0.0, 1.0, points, true);
+        assertEquals(0L, data.getVersion());
+        assertEquals(points[17], data.getPoint(17), 0.0);
+        
+        IntegrationType[] types = IntegrationType.values();
+        List<MutableDataSet.LiveIntegral> live = new ArrayList<>();
+        for (IntegrationType type : types) {
+            live.add(data.liveIntegral(type, LEFT));
+            live.add(data.liveIntegral(type, RIGHT));
+        }
+        assertTrue(live.get(0) == data.liveIntegral(types[0], LEFT));
+        
+        Random random = new Random(11);
+        int nUpdates = 5000;
+        for (int k = 0; k < nUpdates; k++) {
+            int index = random.nextInt(nPoints);
+            if (k % 2 == 0) {
+                data.add(index, random.nextGaussian());
+            } else {
+                data.set(index, random.nextGaussian());
+            }
+        }
+        assertEquals(nUpdates, data.getVersion());
+        for (MutableDataSet.LiveIntegral integral : live) {
+            double expected = UltraNewIntegration.integrate(data, integral.getType(), integral.getSide());
+            assertEquals(expected, integral.getArea(), 1.0E-12);
+        }
+        
+        // A detached integral stops following updates.
+        MutableDataSet.LiveIntegral detached = live.get(0);
+        double before = detached.getArea();
+        data.detach(detached);
+        data.add(nPoints / 2, 1.0);
+        assertEquals(before, detached.getArea(), 0.0);
+        detached.resum();
+        assertEquals(UltraNewIntegration.integrate(data, detached.getType(), detached.getSide()), detached.getArea(), 1.0E-12);
+        
+        // An infinite point, once replaced, leaves no NaN behind.
+        MutableDataSet.LiveIntegral trapezoid = data.liveIntegral(IntegrationType.TRAPEZOIDAL, LEFT);
+        data.set(40, Double.POSITIVE_INFINITY);
+        assertEquals(Double.POSITIVE_INFINITY, trapezoid.getArea(), 0.0);
+        data.set(40, 1.0);
+        assertEquals(UltraNewIntegration.integrate(data, IntegrationType.TRAPEZOIDAL, LEFT), trapezoid.getArea(), 1.0E-12);
+    }
+    
+    /**
+     * Cached integrals match integrating directly, repeat queries hit, mutable
+     * data sets are recomputed after updates, live histograms are refused and
+     * the cache stays bounded.
+     */
+    @Test
+    public void integrationCacheTest() {
+        IntegrationCache cache = new IntegrationCache(8);
+        double[] x = grid(0.0, 1.0, 101, false);
+        FunctionDataCurve curve = new SinWave(x, false, 10, 6);
+        for (int repeat = 0; repeat < 3; repeat++) {
+            for (IntegrationType type : IntegrationType.values()) {
+                assertEquals(UltraNewIntegration.integrate(curve, type, LEFT), cache.integrate(curve, type, LEFT), 0.0);
+            }
+            assertEquals(UltraNewIntegration.simpsons(curve, RIGHT, 3, 40),
+                    cache.integrate(curve, IntegrationType.SIMPSONS, RIGHT, 3, 40), 0.0);
+        }
+        int nQueries = IntegrationType.values().length + 1;
+        assertEquals(nQueries, cache.getMisses());
+        assertEquals(2 * nQueries, cache.getHits());
+        
+        MutableDataSet data = new MutableDataSet(0.0, 1.0, 50, false);
+        data.set(10, 1.0);
+        double before = cache.integrate(data, IntegrationType.TRAPEZOIDAL, LEFT);
+        assertEquals(before, cache.integrate(data, IntegrationType.TRAPEZOIDAL, LEFT), 0.0);
+        data.add(20, 2.0);
+        assertEquals(UltraNewIntegration.integrate(data, IntegrationType.TRAPEZOIDAL, LEFT),
+                cache.integrate(data, IntegrationType.TRAPEZOIDAL, LEFT), 0.0);
+        assertEquals(before + (2.0 * data.binWidth()), cache.integrate(data, IntegrationType.TRAPEZOIDAL, LEFT), 1.0E-15);
+        
+        for (int k = 0; k < 20; k++) {
+            cache.integrate(data, IntegrationType.RECTANGULAR, LEFT, 0, k + 1);
+        }
+        assertEquals(8, cache.size());
+        cache.clear();
+        assertEquals(0, cache.size());
+        
+        ConcurrentHistogram histogram = new ConcurrentHistogram(0.0, 1.0, 11, false);
+        histogram.add(5, 1.0);
+        boolean rejected = false;
+        try {
+            cache.integrate(histogram, IntegrationType.TRAPEZOIDAL, LEFT);
+        } catch (IllegalArgumentException ex) {
+            rejected = true;
+        }
+        assertTrue(rejected);
+        DoublesDataSet snapshot = histogram.snapshot();
+        assertEquals(UltraNewIntegration.integrate(snapshot, IntegrationType.TRAPEZOIDAL, LEFT),
+                cache.integrate(snapshot, IntegrationType.TRAPEZOIDAL, LEFT), 0.0);
+    }
+    
+    /**
+     * Bulk evaluation of sine and cosine waves by recurrence matches Math.sin
+     * and Math.cos on uniform, half-width and irregular grids.
+     */
+    @Test
+    public void bulkTrigTest() {
+        int nPoints = 10001;
+        double[] uniform = grid(-2.0, 2.0, nPoints, false);
+        double[] halfWidth = grid(0.0, 1.0, nPoints, true);
+        double[] irregular = new double[nPoints];
+        Random random = new Random(3);
+        for (int i = 0; i < nPoints; i++) {
+            irregular[i] = (i == 0) ? 0.0 : irregular[i - 1] + (random.nextInt(3) == 0 ? 2.0E-4 : 1.0E-4);
+        }
+        double[] frequencies = {0.5, 6.0, 157.0, 4000.0};
+        double[] out = new double[nPoints];
+        for (double j : frequencies) {
+            // Within a few ulp of x, as conditioned by the frequency.
+            double tolerance = 1.0E-14 * Math.max(1.0, j);
+            for (double[] x : new double[][]{uniform, halfWidth}) {
+                FunctionDataCurve sin = new SinWave(x, x == halfWidth, 10.0, j);
+                FunctionDataCurve cos = new CosineWave(x, x == halfWidth, -7.0, j);
+                for (int i = 0; i < nPoints; i++) {
+                    assertEquals(10.0 * Math.sin(j * x[i]), sin.getPoint(i), 10.0 * tolerance);
+                    assertEquals(-7.0 * Math.cos(j * x[i]), cos.getPoint(i), 7.0 * tolerance);
+                }
+                sin.fX(irregular, out);
+                for (int i = 0; i < nPoints; i++) {
+                    assertEquals(10.0 * Math.sin(j * irregular[i]), out[i], 10.0 * tolerance);
+                }
+            }
+        }
+    }
+    
+    /**
+     * The FFT matches a direct DFT, and spectral CompositeCurves match summing
+     * their components directly, with or without eligible components and
+     * with components just off a bin.
+     */
+    @Test
+    public void spectralCompositeTest() {
+        int n = 64;
+        double[] re = new double[n];
+        double[] im = new double[n];
+        Random random = new Random(5);
+        for (int m = 0; m < n; m++) {
+            re[m] = random.nextGaussian();
+            im[m] = random.nextGaussian();
+        }
+        double[] re0 = re.clone();
+        double[] im0 = im.clone();
+        FFT.forward(re, im);
+        for (int k = 0; k < n; k++) {
+            double sumRe = 0.0;
+            double sumIm = 0.0;
+            for (int m = 0; m < n; m++) {
+                double angle = (-2.0 * Math.PI * k * m) / n;
+                sumRe += (re0[m] * Math.cos(angle)) - (im0[m] * Math.sin(angle));
+                sumIm += (re0[m] * Math.sin(angle)) + (im0[m] * Math.cos(angle));
+            }
+            assertEquals(sumRe, re[k], 1.0E-12);
+            assertEquals(sumIm, im[k], 1.0E-12);
+        }
+        FFT.inverse(re, im);
+        for (int m = 0; m < n; m++) {
+            assertEquals(n * re0[m], re[m], 1.0E-12);
+            assertEquals(n * im0[m], im[m], 1.0E-12);
+        }
+        
+        // The spectrum of a real signal is Hermitian, and transforms back to it.
+        double[] spectrumIm = new double[n];
+        double[] spectrumRe = re0.clone();
+        FFT.forward(spectrumRe, spectrumIm);
+        double[] real = FFT.inverseReal(spectrumRe, spectrumIm);
+        for (int m = 0; m < n; m++) {
+            assertEquals(n * re0[m], real[m], 1.0E-12);
+        }
+        
+        for (boolean halfWidth : new boolean[]{false, true}) {
+            // 1024 uniform points over [0, 1], so whole periods line up with a 2048 or 1024 point FFT.
+            int nPoints = halfWidth ? 1026 : 1025;
+            double[] x = grid(0.0, 1.0, nPoints, halfWidth);
+            List<FunctionDataCurve> curves = new ArrayList<>();
+            List<Double> coefficients = new ArrayList<>();
+            for (int m = 1; m <= 300; m++) {
+                double j = 2.0 * Math.PI * m;
+                curves.add((m % 2 == 0) ? new SinWave(x, halfWidth, 10.0 / m, j) : new CosineWave(x, halfWidth, 5.0, -j));
+                coefficients.add(1.0 + (0.01 * m));
+            }
+            curves.add(new SinWave(x, halfWidth, 3.0, 7.3));
+            coefficients.add(2.0);
+            curves.add(new PolynomialCurve(x, halfWidth, new double[]{1.0, -2.0, 0.5}));
+            coefficients.add(1.0);
+            CompositeCurve direct = new CompositeCurve(curves, coefficients);
+            CompositeCurve spectral = new CompositeCurve(curves, coefficients, true);
+            for (int i = 0; i < nPoints; i++) {
+                assertEquals(direct.getPoint(i), spectral.getPoint(i), 1.0E-10);
+            }
+            assertEquals(UltraNewIntegration.integrate(direct, IntegrationType.BOOLE, LEFT),
+                    UltraNewIntegration.integrate(spectral, IntegrationType.BOOLE, LEFT), 1.0E-12);
+            
+            // Off its bin by a relative 5E-14, a large sine drifts visibly by the end of the grid, so is summed directly.
+            List<FunctionDataCurve> offBin = new ArrayList<>();
+            offBin.add(new SinWave(x, halfWidth, 1.0E4, 2.0 * Math.PI * 600 * (1.0 + 5.0E-14)));
+            CompositeCurve offDirect = new CompositeCurve(offBin, null);
+            CompositeCurve offSpectral = new CompositeCurve(offBin, null, true);
+            for (int i = 0; i < nPoints; i++) {
+                assertEquals(offDirect.getPoint(i), offSpectral.getPoint(i), 1.0E-9);
+            }
+        }
+    }
+    
+    /**
+     * A flattened CompositeCurve, with nested composites, a curve of another
+     * kind and a subclass of a flattened kind, evaluates and integrates like
+     * the sum of its components, point by point and in bulk.
+     */
+    @Test
+    public void flattenedCompositeTest() {
+        int nPoints = 5001;
+        double[] x = grid(-1.0, 2.0, nPoints, false);
+        FunctionDataCurve exp = new FunctionDataCurve() {
+            {
+                lb = x[0];
+                ub = x[nPoints - 1];
+                points = new double[nPoints];
+                fX(x, points);
+            }
+            
+            @Override
+            public double integralAt(double x) {
+                return Math.exp(x);
+            }
+            
+            @Override
+            public double fX(double x) {
+                return Math.exp(x);
+            }
+        };
+        List<FunctionDataCurve> inner = new ArrayList<>();
+        inner.add(new PolynomialCurve(x, new double[]{1.0, 2.0, -3.0, 0.5}));
+        inner.add(new CosineWave(x, 2.0, 3.0));
+        inner.add(exp);
+        CompositeCurve nested = new CompositeCurve(inner, Arrays.asList(2.0, -1.0, 0.5));
+        List<FunctionDataCurve> outer = new ArrayList<>();
+        outer.add(nested);
+        outer.add(new PolynomialCurve(x, new double[]{-4.0, 0.0, 1.0}));
+        outer.add(new SinWave(x, 10.0, 6.0));
+        outer.add(new SinWave(x, -7.0, 2.5));
+        // A subclass that overrides its function must not be flattened as a plain sine.
+        outer.add(new SinWave(x, 10.0, 6.0) {
+            @Override
+            public double fX(double t) {
+                return t;
+            }
+            
+            @Override
+            public void fX(double[] xs, double[] out) {
+                for (int i = 0; i < xs.length; i++) {
+                    out[i] = xs[i];
+                }
+            }
+            
+            @Override
+            public double integralAt(double t) {
+                return 0.5 * t * t;
+            }
+        });
+        List<Double> coefficients = Arrays.asList(3.0, 1.5, 1.0, 0.25, 2.0);
+        CompositeCurve curve = new CompositeCurve(outer, coefficients);
+        
+        double[] bulk = new double[nPoints];
+        curve.fX(x, bulk);
+        for (int i = 0; i < nPoints; i += 7) {
+            double value = 0.0;
+            double integral = 0.0;
+            for (int c = 0; c < outer.size(); c++) {
+                value += coefficients.get(c) * outer.get(c).fX(x[i]);
+                integral += coefficients.get(c) * outer.get(c).integralAt(x[i]);
+            }
+            assertEquals(value, curve.fX(x[i]), 1.0E-12);
+            assertEquals(integral, curve.integralAt(x[i]), 1.0E-12);
+            assertEquals(value, bulk[i], 1.0E-12);
+            assertEquals(value, curve.getPoint(i), 1.0E-12);
+        }
+        assertEquals(outer, curve.getSubCurves());
+    }
+    
+    /**
+     * PolynomialCurve's Horner evaluation, bulk and uniform-grid evaluation
+     * and closed-form range integrals match naive sums of powers.
+     */
+    @Test
+    public void polynomialCurveTest() {
+        int nPoints = 4001;
+        double step = 3.0 / (nPoints - 1);
+        double[] x = grid(-1.5, 1.5, nPoints, false);
+        Random random = new Random(24);
+        for (int degree : new int[]{0, 1, 2, 3, 4, 5, 6, 25}) {
+            double[] coefficients = new double[degree + 1];
+            for (int k = 0; k <= degree; k++) {
+                coefficients[k] = random.nextDouble() - 0.5;
+            }
+            PolynomialCurve curve = new PolynomialCurve(x, coefficients);
+            double[] bulk = new double[nPoints];
+            double[] uniform = new double[nPoints];
+            curve.fX(x, bulk);
+            curve.fXUniform(x[0], step, uniform);
+            double scale = 0.0;
+            for (int k = 0; k <= degree; k++) {
+                scale += Math.abs(coefficients[k]) * Math.pow(1.5, k);
+            }
+            double tolerance = 1.0E-13 * Math.max(1.0, scale);
+            for (int i = 0; i < nPoints; i++) {
+                double value = 0.0;
+                for (int k = 0; k <= degree; k++) {
+                    value += coefficients[k] * Math.pow(x[i], k);
+                }
+                assertEquals(value, curve.fX(x[i]), tolerance);
+                assertEquals(value, bulk[i], tolerance);
+                assertEquals(value, uniform[i], tolerance);
+                assertEquals(value, curve.getPoint(i), tolerance);
+            }
+            double lb = -1.2;
+            double ub = 0.9;
+            double integral = 0.0;
+            for (int k = 0; k <= degree; k++) {
+                integral += coefficients[k] * (Math.pow(ub, k + 1) - Math.pow(lb, k + 1)) / (k + 1);
+            }
+            assertEquals(integral, curve.anaylticalIntegral(lb, ub), tolerance);
+            assertEquals(integral, curve.integralAt(ub) - curve.integralAt(lb), tolerance);
+        }
+    }
+    
+    /**
+     * Lazily sampled curves match eagerly sampled ones point for point and
+     * integral for integral, and a 10^9-point grid can be read and integrated
+     * over a sub-range without evaluating the rest.
+     */
+    @Test
+    public void lazyCurveTest() {
+        for (boolean halfWidth : new boolean[]{false, true}) {
+            int nPoints = 20001;
+            double lb = -2.0;
+            double ub = 3.0;
+            double[] x = grid(lb, ub, nPoints, halfWidth);
+            double[] coefficients = {0.5, -1.0, 0.25, 2.0};
+            List<FunctionDataCurve> eager = new ArrayList<>();
+            eager.add(new SinWave(x, halfWidth, 2.0, 3.0));
+            eager.add(new CosineWave(x, halfWidth, -1.5, 7.0));
+            eager.add(new PolynomialCurve(x, halfWidth, coefficients));
+            List<FunctionDataCurve> lazy = new ArrayList<>();
+            lazy.add(new SinWave(lb, ub, nPoints, halfWidth, 2.0, 3.0));
+            lazy.add(new CosineWave(lb, ub, nPoints, halfWidth, -1.5, 7.0));
+            lazy.add(new PolynomialCurve(lb, ub, nPoints, halfWidth, coefficients));
+            List<Double> weights = Arrays.asList(1.0, 0.5, -2.0);
+            eager.add(new CompositeCurve(new ArrayList<>(eager), weights));
+            lazy.add(new CompositeCurve(new ArrayList<>(lazy), weights));
+            
+            for (int c = 0; c < eager.size(); c++) {
+                FunctionDataCurve expected = eager.get(c);
+                FunctionDataCurve curve = lazy.get(c);
+                assertTrue(curve.isLazy());
+                assertTrue(!expected.isLazy());
+                assertEquals(expected.numPoints(), curve.numPoints());
+                assertEquals(expected.binWidth(), curve.binWidth(), 1.0E-15);
+                double[] expectedPoints = expected.getAllPoints();
+                double[] points = curve.getAllPoints();
+                for (int i = 0; i < nPoints; i++) {
+                    assertEquals(expectedPoints[i], points[i], 1.0E-12);
+                }
+                for (int i = nPoints - 1; i >= 0; i -= 997) {
+                    assertEquals(expectedPoints[i], curve.getPoint(i), 1.0E-12);
+                }
+                for (IntegrationType type : IntegrationType.values()) {
+                    assertEquals(UltraNewIntegration.integrate(expected, type, LEFT), UltraNewIntegration.integrate(curve, type, LEFT), 1.0E-9);
+                }
+            }
+        }
+        
+        int nPoints = 1000000001;
+        SinWave sin = new SinWave(0.0, 100.0, nPoints, false, 2.0, 3.0);
+        PolynomialCurve poly = new PolynomialCurve(0.0, 100.0, nPoints, false, new double[]{1.0, -0.02, 0.0003});
+        CompositeCurve sum = new CompositeCurve(Arrays.asList(sin, poly), Arrays.asList(1.0, 4.0));
+        assertEquals(nPoints, sum.numPoints());
+        assertEquals(1.0E-7, sum.binWidth(), 1.0E-20);
+        for (int i = 0; i < nPoints; i += 123456789) {
+            double xi = i * 1.0E-7;
+            assertEquals(sin.fX(xi) + (4.0 * poly.fX(xi)), sum.getPoint(i), 1.0E-12);
+        }
+        assertEquals(poly.fX(100.0), poly.getPoint(nPoints - 1), 1.0E-12);
+        int from = 654321000;
+        int to = from + 100000;
+        double exact = sum.anaylticalIntegral(from * 1.0E-7, to * 1.0E-7);
+        assertEquals(exact, UltraNewIntegration.simpsons(sum, LEFT, from, to), 1.0E-12);
+    }
+    
+    /**
+     * Row, column and double integrals of a 2-D grid match integrating the
+     * row and column views, the parallel tiles give identical results, and
+     * oversized grids are rejected.
+     */
+    @Test
+    public void gridIntegrationTest() {
+        int nRows = 131;
+        int nCols = 1102;
+        GridDataSet2D grid = new GridDataSet2D(0.0, 1.0, nRows, true, -2.0, 2.0, nCols, false);
+        double[] lambdas = grid(0.0, 1.0, nRows, true);
+        double[] dudls = grid(-2.0, 2.0, nCols, false);
+        for (int r = 0; r < nRows; r++) {
+            for (int c = 0; c < nCols; c++) {
+                grid.setValue(r, c, Math.sin(3.0 * lambdas[r]) * Math.exp(-dudls[c] * dudls[c]));
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (IntegrationType type : new IntegrationType[]{IntegrationType.TRAPEZOIDAL, IntegrationType.SIMPSONS}) {
+                double[] rows = new double[nRows];
+                double[] parallelRows = new double[nRows];
+                GridIntegration.integrateRows(grid, type, LEFT, rows);
+                GridIntegration.integrateRows(grid, type, LEFT, parallelRows, pool);
+                for (int r = 0; r < nRows; r += 13) {
+                    assertEquals(UltraNewIntegration.integrate(grid.row(r), type, LEFT), rows[r], 1.0E-13);
+                }
+                assertTrue(Arrays.equals(rows, parallelRows));
+                
+                double[] columns = new double[nCols];
+                double[] parallelColumns = new double[nCols];
+                GridIntegration.integrateColumns(grid, type, LEFT, columns);
+                GridIntegration.integrateColumns(grid, type, LEFT, parallelColumns, pool);
+                for (int c = 0; c < nCols; c += 97) {
+                    assertEquals(UltraNewIntegration.integrate(grid.column(c), type, LEFT), columns[c], 1.0E-13);
+                }
+                assertTrue(Arrays.equals(columns, parallelColumns));
+                
+                double full = GridIntegration.integrate(grid, type, LEFT);
+                assertEquals(full, GridIntegration.integrate(grid, type, LEFT, pool), 0.0);
+                // The double integral is the integral of the row integrals.
+                DoublesDataSet marginal = new DoublesDataSet(lambdas, rows, true);
+                assertEquals(UltraNewIntegration.integrate(marginal, type, LEFT), full, 1.0E-12);
+            }
+            // (1 - cos 3) / 3 times the Gaussian integral over [-2, 2].
+            double exact = ((1.0 - Math.cos(3.0)) / 3.0) * 1.764162781524843;
+            assertEquals(exact, GridIntegration.integrate(grid, IntegrationType.SIMPSONS, LEFT), 1.0E-5);
+        } finally {
+            pool.shutdown();
+        }
+        
+        // 2^16 by 2^16 overflows an int to 0, which must not pass for an empty grid.
+        boolean rejected = false;
+        try {
+            new GridDataSet2D(0.0, 1.0, 1 << 16, false, 0.0, 1.0, 1 << 16, false);
+        } catch (ArithmeticException ex) {
+            rejected = true;
+        }
+        assertTrue(rejected);
+    }
+    
+    
+    /**
+     * Non-uniform integration agrees with the uniform integrators on uniform
+     * grids, is exact for quadratics on uneven grids, and answers sub-ranges.
+     */
+    @Test
+    public void nonUniformTest() {
+        // Uniform grid, even number of bins.
+        int nUniform = 201;
+        double[] ux = new double[nUniform];
+        double[] uy = new double[nUniform];
+        for (int i = 0; i < nUniform; i++) {
+            ux[i] = i * 0.005;
+            uy[i] = Math.sin(6.0 * ux[i]) + ux[i];
+        }
+        NonUniformDataSet uniform = new NonUniformDataSet(ux, uy);
+        DoublesDataSet doubles = new DoublesDataSet(ux, uy);
+        for (IntegrationSide side : IntegrationSide.values()) {
+            assertEquals(UltraNewIntegration.simpsons(doubles, side), NonUniformIntegration.simpsons(uniform, side), 1.0E-13);
+            assertEquals(UltraNewIntegration.trapezoidal(doubles, side), NonUniformIntegration.trapezoidal(uniform), 1.0E-13);
+        }
+        
+        // Graded grids with both parities of bins: exact for a quadratic.
+        for (int nPoints : new int[]{3, 4, 50, 51}) {
+            double[] x = new double[nPoints];
+            double[] y = new double[nPoints];
+            for (int i = 0; i < nPoints; i++) {
+                double t = (double) i / (nPoints - 1);
+                x[i] = t * t * t + 0.2 * t;
+                y[i] = 1.0 + (2.0 * x[i]) - (3.0 * x[i] * x[i]);
+            }
+            NonUniformDataSet data = new NonUniformDataSet(x, y);
+            double ub = x[nPoints - 1];
+            double exact = ub + (ub * ub) - (ub * ub * ub);
+            for (IntegrationSide side : IntegrationSide.values()) {
+                assertEquals(exact, NonUniformIntegration.simpsons(data, side), 1.0E-13);
+            }
+            double a = 0.3 * ub;
+            double b = 0.77 * ub;
+            double exactRange = (b + (b * b) - (b * b * b)) - (a + (a * a) - (a * a * a));
+            assertEquals(exactRange, NonUniformIntegration.integrate(data, a, b, IntegrationType.SIMPSONS), 1.0E-13);
+            assertEquals(-exactRange, NonUniformIntegration.integrate(data, b, a, IntegrationType.SIMPSONS), 1.0E-13);
+            if (nPoints > 10) {
+                assertEquals(exactRange, NonUniformIntegration.integrate(data, a, b, IntegrationType.TRAPEZOIDAL), 1.0E-3);
+                
+                // One whole bin between the partial end bins, and single bins at either end of the grid.
+                double c = 0.5 * (x[10] + x[11]);
+                double d = 0.5 * (x[12] + x[13]);
+                double exactOneBin = (d + (d * d) - (d * d * d)) - (c + (c * c) - (c * c * c));
+                assertEquals(exactOneBin, NonUniformIntegration.integrate(data, c, d, IntegrationType.SIMPSONS), 1.0E-13);
+                for (int k : new int[]{0, nPoints - 2}) {
+                    double x0 = x[k];
+                    double x1 = x[k + 1];
+                    double exactBin = (x1 + (x1 * x1) - (x1 * x1 * x1)) - (x0 + (x0 * x0) - (x0 * x0 * x0));
+                    assertEquals(exactBin, NonUniformIntegration.simpsons(data, IntegrationSide.LEFT, k, k + 1), 1.0E-13);
+                }
+            }
+        }
+        
+        boolean rejected = false;
+        try {
+            new NonUniformDataSet(new double[]{0.0, 0.5, 0.4}, new double[3]);
+        } catch (IllegalArgumentException ex) {
+            rejected = true;
+        }
+        assertTrue(rejected);
+    }
+    
+    /**
+     * Adaptive Gauss-Kronrod integration reaches 1e-12 relative error on
+     * smooth curves within a few hundred fX calls.
+     */
+    @Test
+    public void gaussKronrodTest() {
+        double[] x = new double[3];
+        x[1] = 0.5;
+        x[2] = 1.0;
+        List<FunctionDataCurve> curves = new ArrayList<>();
+        curves.add(new SinWave(x, 10, 6));
+        curves.add(new CosineWave(x, -7, 25));
+        curves.add(new PolynomialCurve(x, new double[]{1.0, -3.0, 0.5, 7.0, 2.0}));
+        curves.add(new CompositeCurve(Arrays.asList(new SinWave(x, 10, 6), new CosineWave(x, -7, 5),
+                new SinWave(x, 11, 40)), Arrays.asList(1.0, 1.0, 1.0)));
+        for (FunctionDataCurve curve : curves) {
+            int[] calls = new int[1];
+            GaussKronrodIntegration.Result result = GaussKronrodIntegration.integrate((double t) -> {
+                calls[0]++;
+                return curve.fX(t);
+            }, 0.0, 1.0, 0.0, 1.0E-12, GaussKronrodIntegration.DEFAULT_MAX_EVALUATIONS);
+            double exact = curve.anaylticalIntegral(0.0, 1.0);
+            assertTrue(result.isConverged());
+            assertEquals(calls[0], result.getEvaluations());
+            assertTrue(result.getEvaluations() < 500);
+            assertEquals(exact, result.getArea(), 1.0E-12 * Math.abs(exact));
+            assertEquals(exact, GaussKronrodIntegration.integrate(curve, 1.0E-12).getArea(), 1.0E-12 * Math.abs(exact));
+        }
+        
+        // A budget too small to converge is respected and reported.
+        FunctionDataCurve wave = new SinWave(x, 1, 400);
+        GaussKronrodIntegration.Result limited = GaussKronrodIntegration.integrate(wave::fX, 0.0, 1.0, 0.0, 1.0E-12, 75);
+        assertTrue(limited.getEvaluations() <= 75);
+        assertTrue(!limited.isConverged());
+        
+        // A large constant half sets a roundoff floor, below which the singular half must still be refined.
+        double level = 1.0E6;
+        GaussKronrodIntegration.Result floored = GaussKronrodIntegration.integrate(
+                (double t) -> (t < 0.5) ? level : Math.sqrt(Math.abs(t - 0.75)), 0.0, 1.0, 0.0, 1.0E-20,
+                GaussKronrodIntegration.DEFAULT_MAX_EVALUATIONS);
+        double levelFloor = 50.0 * Math.ulp(1.0) * level * 0.5;
+        assertTrue(floored.isConverged());
+        assertEquals(levelFloor, floored.getErrorEstimate(), 1.0E-5 * levelFloor);
+        assertEquals((0.5 * level) + (1.0 / 6.0), floored.getArea(), 2.0 * levelFloor);
+    }
+    
+    /**
+     * Romberg integration on strided views beats Boole's rule on grids of any
+     * size, and stops early once within tolerance.
+     */
+    @Test
+    public void rombergTest() {
+        for (int nPoints : new int[]{33, 201, 202, 1001, 4097}) {
+            for (boolean halfWidth : new boolean[]{false, true}) {
+                double[] x = grid(0.0, 1.0, nPoints, halfWidth);
+                FunctionDataCurve curve = new SinWave(x, halfWidth, 2, 3);
+                double exact = curve.anaylticalIntegral(0.0, 1.0);
+                RombergIntegration.Result result = RombergIntegration.integrate(curve);
+                double booleError = Math.abs(UltraNewIntegration.integrate(curve, IntegrationType.BOOLE, LEFT) - exact);
+                assertTrue(Math.abs(result.getArea() - exact) <= Math.max(booleError, 1.0E-14));
+                assertEquals(nPoints, result.getPointsRead(), nPoints / 2);
+                if (nPoints > 1000) {
+                    RombergIntegration.Result early = RombergIntegration.integrate(curve, 1.0E-9);
+                    assertTrue(early.isConverged());
+                    assertEquals(exact, early.getArea(), 1.0E-9);
+                    assertTrue(early.getPointsRead() < nPoints / 4);
+                }
+            }
+        }
+    }
+    
+    /**
+     * One fused sweep matches every rule's separate integration, and the
+     * error estimates track the actual errors.
+     */
+    @Test
+    public void multiRuleIntegralTest() {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (int nPoints : new int[]{6, 7, 8, 9, 203, 204}) {
+                for (boolean halfWidth : new boolean[]{false, true}) {
+                    double[] x = grid(0.0, 1.0, nPoints, halfWidth);
+                    FunctionDataCurve curve = new SinWave(x, halfWidth, 2, 3);
+                    MultiRuleIntegral fused = new MultiRuleIntegral(curve);
+                    MultiRuleIntegral parallel = new MultiRuleIntegral(curve, pool);
+                    for (IntegrationType type : IntegrationType.values()) {
+                        for (IntegrationSide side : IntegrationSide.values()) {
+                            double expected = UltraNewIntegration.integrate(curve, type, side);
+                            assertEquals(expected, fused.getArea(type, side), 1.0E-12);
+                            assertEquals(expected, parallel.getArea(type, side), 1.0E-12);
+                        }
+                    }
+                    if (nPoints > 200) {
+                        double exact = curve.anaylticalIntegral(0.0, 1.0);
+                        for (IntegrationSide side : IntegrationSide.values()) {
+                            for (IntegrationType type : IntegrationType.values()) {
+                                double error = Math.abs(fused.getArea(type, side) - exact);
+                                assertTrue(error <= 2.0 * fused.errorEstimate(type, side));
+                            }
+                            // Not wildly pessimistic either.
+                            double trapezoidalError = Math.abs(fused.getArea(IntegrationType.TRAPEZOIDAL, side) - exact);
+                            assertTrue(trapezoidalError >= 0.5 * fused.errorEstimate(IntegrationType.TRAPEZOIDAL, side));
+                        }
+                        assertEquals(exact, fused.bestEstimate(), 2.0 * fused.bestErrorEstimate());
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    /**
+     * Integration by cached weight vectors matches the rule-by-rule
+     * integrators, including on repeated (cached) grid shapes.
+     */
+    @Test
+    public void weightedIntegrationTest() {
+        for (int nPoints : new int[]{4, 5, 6, 7, 8, 201, 1002}) {
+            for (boolean halfWidth : new boolean[]{false, true}) {
+                double[] x = grid(0.0, 1.0, nPoints, halfWidth);
+                FunctionDataCurve curve = new CosineWave(x, halfWidth, 4, 9);
+                for (IntegrationType type : IntegrationType.values()) {
+                    for (IntegrationSide side : IntegrationSide.values()) {
+                        double expected = UltraNewIntegration.integrate(curve, type, side);
+                        assertEquals(expected, UltraNewIntegration.integrateWeighted(curve, type, side), 1.0E-12);
+                        assertEquals(expected, UltraNewIntegration.integrateWeighted(curve, type, side), 1.0E-12);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * The weight cache returns the same vector for a repeated grid shape,
+     * evicts the least recently used vectors once it holds more than its
+     * budget of doubles, and never caches a vector larger than the budget.
+     * QuadratureWeights is package-private, so it is reached by reflection.
+     */
+    @Test
+    public void quadratureWeightsCacheTest() throws ReflectiveOperationException {
+        Class<?> weightsClass = Class.forName("ultranewintegration.QuadratureWeights");
+        Method get = weightsClass.getDeclaredMethod("get", int.class, IntegrationType.class, IntegrationSide.class, boolean.class);
+        Field budgetField = weightsClass.getDeclaredField("MAX_CACHED_DOUBLES");
+        get.setAccessible(true);
+        budgetField.setAccessible(true);
+        int budget = budgetField.getInt(null);
+        
+        Object small = get.invoke(null, 1001, IntegrationType.SIMPSONS, LEFT, false);
+        assertTrue(small == get.invoke(null, 1001, IntegrationType.SIMPSONS, LEFT, false));
+        
+        // Eight quarter-budget vectors are twice the budget, so the first ones go.
+        int nPoints = budget / 4;
+        Object first = get.invoke(null, nPoints, IntegrationType.RECTANGULAR, LEFT, true);
+        for (IntegrationType type : IntegrationType.values()) {
+            for (IntegrationSide side : IntegrationSide.values()) {
+                get.invoke(null, nPoints, type, side, false);
+            }
+        }
+        assertTrue(small != get.invoke(null, 1001, IntegrationType.SIMPSONS, LEFT, false));
+        assertTrue(first != get.invoke(null, nPoints, IntegrationType.RECTANGULAR, LEFT, true));
+        Object last = get.invoke(null, nPoints, IntegrationType.BOOLE, RIGHT, false);
+        assertTrue(last == get.invoke(null, nPoints, IntegrationType.BOOLE, RIGHT, false));
+        
+        Object large = get.invoke(null, budget + 1, IntegrationType.TRAPEZOIDAL, LEFT, false);
+        assertTrue(large != get.invoke(null, budget + 1, IntegrationType.TRAPEZOIDAL, LEFT, false));
+    }
+    
+    /**
+     * Batch integration of many series on one grid matches integrating each
+     * series on its own, for both block layouts.
+     */
+    @Test
+    public void batchIntegrationTest() {
+        int nSeries = 7;
+        for (int nPoints : new int[]{3, 4, 9, 102, 203}) {
+            for (boolean halfWidth : new boolean[]{false, true}) {
+                double[] x = grid(0.0, 1.0, nPoints, halfWidth);
+                double[] rowMajor = new double[nPoints * nSeries];
+                double[] columnMajor = new double[nPoints * nSeries];
+                DataSet[] series = new DataSet[nSeries];
+                for (int s = 0; s < nSeries; s++) {
+                    series[s] = new SinWave(x, halfWidth, 3 + s, 2 * s + 1);
+                    for (int i = 0; i < nPoints; i++) {
+                        rowMajor[(s * nPoints) + i] = series[s].getPoint(i);
+                        columnMajor[(i * nSeries) + s] = series[s].getPoint(i);
+                    }
+                }
+                for (IntegrationType type : IntegrationType.values()) {
+                    for (IntegrationSide side : IntegrationSide.values()) {
+                        if (halfWidth && nPoints < 4) {
+                            // No full bin between the half-width ends, which the serial integrators reject too.
+                            boolean rejected = false;
+                            try {
+                                BatchIntegration.integrate(0.0, 1.0, halfWidth, rowMajor, nSeries,
+                                        BatchIntegration.Layout.ROW_MAJOR, type, side);
+                            } catch (IllegalArgumentException ex) {
+                                rejected = true;
+                            }
+                            assertTrue(rejected);
+                            continue;
+                        }
+                        double[] rows = BatchIntegration.integrate(0.0, 1.0, halfWidth, rowMajor, nSeries,
+                                BatchIntegration.Layout.ROW_MAJOR, type, side);
+                        double[] columns = BatchIntegration.integrate(0.0, 1.0, halfWidth, columnMajor, nSeries,
+                                BatchIntegration.Layout.COLUMN_MAJOR, type, side);
+                        for (int s = 0; s < nSeries; s++) {
+                            double expected = UltraNewIntegration.integrate(series[s], type, side);
+                            assertEquals(expected, rows[s], 1.0E-12);
+                            assertEquals(expected, columns[s], 1.0E-12);
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * x of nPoints evenly spaced points from lb to ub, laid out as
+     * FunctionDataCurve.assertXIntegrity expects; with half-width ends, the
+     * first and last bins are half the width of the rest.
+     * @param lb Lower bound
+     * @param ub Upper bound
+     * @param nPoints Number of points
+     * @param halfWidth Whether the end bins are half-width
+     * @return x
+     */
+    private static double[] grid(double lb, double ub, int nPoints, boolean halfWidth) {
+        double sep = (ub - lb) / (halfWidth ? nPoints - 2 : nPoints - 1);
+        double[] x = new double[nPoints];
+        for (int i = 0; i < nPoints; i++) {
+            x[i] = halfWidth ? lb + (0.5 * sep) + ((i - 1) * sep) : lb + (i * sep);
+        }
+        x[0] = lb;
+        x[nPoints - 1] = ub;
+        return x;
+    }
+    
     /**
      * Assert that doubles are equal to within a multiplier of ulp (machine precision).
      * @param trueVal